@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+
+import com.moss.bdbwrap.EnvironmentWrap;
+import com.moss.bdbwrap.defaults.DefaultJaxbDbWrap;
+import com.moss.bdbwrap.defaults.DefaultSingleKeyJaxbSecondaryDbWrap;
+import com.moss.bdbwrap.jaxb.JaxbContextProvider;
+
+/**
+ * A JAXB store of {@link Sample}s with two secondaries, in a throw-away directory.
+ */
+public class BenchmarkStore extends EnvironmentWrap {
+	public static final JaxbContextProvider CONTEXT = new JaxbContextProvider() {
+		private JAXBContext context;
+		
+		public synchronized JAXBContext context() {
+			if (context == null) {
+				try {
+					context = JAXBContext.newInstance(Sample.class);
+				} catch (JAXBException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			return context;
+		}
+	};
+	
+	private final File dir;
+	public final DefaultJaxbDbWrap<String, Sample> samples;
+	public final DefaultSingleKeyJaxbSecondaryDbWrap<String, Sample> byCategory;
+	public final DefaultSingleKeyJaxbSecondaryDbWrap<String, Sample> byOwner;
+	
+	public BenchmarkStore(File dir, int records) {
+		super(dir, 64L * 1024 * 1024);
+		this.dir = dir;
+		
+		samples = new DefaultJaxbDbWrap<String, Sample>("samples", String.class, CONTEXT, this);
+		byCategory = new DefaultSingleKeyJaxbSecondaryDbWrap<String, Sample>("samples-by-category", samples, String.class) {
+			@Override
+			public String extractKey(Sample data) {
+				return data.category;
+			}
+		};
+		byOwner = new DefaultSingleKeyJaxbSecondaryDbWrap<String, Sample>("samples-by-owner", samples, String.class) {
+			@Override
+			public String extractKey(Sample data) {
+				return data.owner;
+			}
+		};
+		
+		load();
+		
+		for (int i = 0; i < records; i++) {
+			samples.put(Sample.key(i), Sample.create(i), null);
+		}
+	}
+	
+	public static File tempDir() {
+		try {
+			File dir = File.createTempFile("bdbwrap-bench", ".dir");
+			if (!(dir.delete() && dir.mkdir())) {
+				throw new RuntimeException("Could not create " + dir.getAbsolutePath());
+			}
+			return dir;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	public void destroy() {
+		close();
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File next : files) {
+				next.delete();
+			}
+		}
+		dir.delete();
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.moss.bdbwrap.Join;
+import com.moss.bdbwrap.ValueScanner;
+import com.sleepycat.je.LockMode;
+
+/**
+ * The core {@link com.moss.bdbwrap.DbWrap} operations against a pre-loaded
+ * {@link BenchmarkStore}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DbWrapBenchmark {
+	
+	@State(Scope.Benchmark)
+	public static class Store {
+		@Param({"10000"})
+		public int records;
+		
+		public BenchmarkStore store;
+		
+		@Setup(Level.Trial)
+		public void open() {
+			store = new BenchmarkStore(BenchmarkStore.tempDir(), records);
+		}
+		
+		@TearDown(Level.Trial)
+		public void close() {
+			store.destroy();
+		}
+	}
+	
+	@State(Scope.Thread)
+	public static class Keys {
+		private final Random random = new Random();
+		private int records;
+		
+		@Setup(Level.Trial)
+		public void setup(Store store) {
+			records = store.records;
+		}
+		
+		public int next() {
+			return random.nextInt(records);
+		}
+	}
+	
+	@Benchmark
+	public Sample get(Store store, Keys keys) {
+		return store.store.samples.get(Sample.key(keys.next()), null, LockMode.DEFAULT);
+	}
+	
+	@Benchmark
+	public Sample getMissing(Store store, Keys keys) {
+		return store.store.samples.get("missing-" + keys.next(), null, LockMode.DEFAULT);
+	}
+	
+	@Benchmark
+	public void put(Store store, Keys keys) {
+		int i = keys.next();
+		store.store.samples.put(Sample.key(i), Sample.create(i), null);
+	}
+	
+	@Benchmark
+	@Measurement(iterations = 5, time = 5)
+	public void scan(Store store, final Blackhole blackhole) {
+		store.store.samples.scan(new ValueScanner<Sample>() {
+			public void inspect(Sample next) {
+				blackhole.consume(next);
+			}
+		}, null);
+	}
+	
+	@Benchmark
+	public Sample secondaryGet(Store store, Keys keys) {
+		return store.store.byOwner.get("owner-" + (keys.next() % 97), null, LockMode.DEFAULT);
+	}
+	
+	@Benchmark
+	public void join(Store store, Keys keys, final Blackhole blackhole) {
+		int i = keys.next();
+		Join<Sample> join = store.store.samples
+				.joinWith(store.store.byCategory, Sample.CATEGORIES[i % Sample.CATEGORIES.length])
+				.joinWith(store.store.byOwner, "owner-" + (i % 97))
+				.create(null, LockMode.DEFAULT);
+		if (join != null) {
+			join.scan(new ValueScanner<Sample>() {
+				public void inspect(Sample next) {
+					blackhole.consume(next);
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.benchmarks;
+
+import java.io.Serializable;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * A smallish, typical record: a handful of short strings and numbers.
+ */
+@XmlRootElement
+@SuppressWarnings("serial")
+public class Sample implements Serializable {
+	public static final String[] CATEGORIES = {"hardware", "software", "services", "support", "training"};
+	
+	public String id;
+	public String category;
+	public String owner;
+	public long created;
+	public int quantity;
+	public String description;
+	
+	public Sample() {}
+	
+	public static String key(int i) {
+		return "sample-" + i;
+	}
+	
+	public static Sample create(int i) {
+		Sample sample = new Sample();
+		sample.id = key(i);
+		sample.category = CATEGORIES[i % CATEGORIES.length];
+		sample.owner = "owner-" + (i % 97);
+		sample.created = 1262304000000L + i * 60000L;
+		sample.quantity = i % 1000;
+		sample.description = "Sample record number " + i + " for the " + sample.category + " department";
+		return sample;
+	}
+}
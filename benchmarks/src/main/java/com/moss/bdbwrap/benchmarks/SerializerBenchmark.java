@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.benchmarks;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.moss.bdbwrap.BinarySerializer;
+import com.moss.bdbwrap.compression.CompressingSerializer;
+import com.moss.bdbwrap.jaxb.JaxbSerializer;
+import com.moss.bdbwrap.jaxb.PooledJaxbSerializer;
+import com.moss.bdbwrap.jdkserial.JdkSerialSerializer;
+import com.moss.bdbwrap.ordered.LongKeySerializer;
+import com.moss.bdbwrap.ordered.UUIDKeySerializer;
+import com.moss.bdbwrap.tostring.ReflectiveFromStringFactory;
+import com.moss.bdbwrap.tostring.ToStringSerializer;
+import com.moss.bdbwrap.tostring.UUIDFromStringFactory;
+
+/**
+ * Round trips of a representative value (or key) through each serializer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializerBenchmark {
+	private Sample sample;
+	private Long longKey;
+	private UUID uuidKey;
+	private byte[] binaryValue;
+	
+	private JaxbSerializer<Sample> jaxb;
+	private PooledJaxbSerializer<Sample> pooledJaxb;
+	private CompressingSerializer<Sample> compressedJaxb;
+	private JdkSerialSerializer<Sample> jdkSerial;
+	private ToStringSerializer<Long> longText;
+	private ToStringSerializer<UUID> uuidText;
+	private LongKeySerializer longOrdered;
+	private UUIDKeySerializer uuidOrdered;
+	private BinarySerializer binary;
+	
+	private byte[] jaxbBytes, compressedJaxbBytes, jdkSerialBytes, longTextBytes, uuidTextBytes, longOrderedBytes, uuidOrderedBytes;
+	
+	@Setup
+	public void setup() {
+		sample = Sample.create(4242);
+		longKey = Long.valueOf(1234567890123L);
+		uuidKey = UUID.randomUUID();
+		binaryValue = new byte[256];
+		
+		jaxb = new JaxbSerializer<Sample>(BenchmarkStore.CONTEXT);
+		pooledJaxb = new PooledJaxbSerializer<Sample>(BenchmarkStore.CONTEXT);
+		compressedJaxb = new CompressingSerializer<Sample>(pooledJaxb);
+		jdkSerial = new JdkSerialSerializer<Sample>();
+		longText = new ToStringSerializer<Long>(new ReflectiveFromStringFactory<Long>(Long.class));
+		uuidText = new ToStringSerializer<UUID>(new UUIDFromStringFactory());
+		longOrdered = new LongKeySerializer();
+		uuidOrdered = new UUIDKeySerializer();
+		binary = new BinarySerializer();
+		
+		jaxbBytes = jaxb.serialize(sample);
+		compressedJaxbBytes = compressedJaxb.serialize(sample);
+		jdkSerialBytes = jdkSerial.serialize(sample);
+		longTextBytes = longText.serialize(longKey);
+		uuidTextBytes = uuidText.serialize(uuidKey);
+		longOrderedBytes = longOrdered.serialize(longKey);
+		uuidOrderedBytes = uuidOrdered.serialize(uuidKey);
+	}
+	
+	@Benchmark
+	public byte[] jaxbSerialize() {
+		return jaxb.serialize(sample);
+	}
+	
+	@Benchmark
+	public Sample jaxbDeserialize() {
+		return jaxb.deSerialize(jaxbBytes);
+	}
+	
+	@Benchmark
+	public byte[] pooledJaxbSerialize() {
+		return pooledJaxb.serialize(sample);
+	}
+	
+	@Benchmark
+	public Sample pooledJaxbDeserialize() {
+		return pooledJaxb.deSerialize(jaxbBytes);
+	}
+	
+	@Benchmark
+	public byte[] compressedJaxbSerialize() {
+		return compressedJaxb.serialize(sample);
+	}
+	
+	@Benchmark
+	public Sample compressedJaxbDeserialize() {
+		return compressedJaxb.deSerialize(compressedJaxbBytes);
+	}
+	
+	@Benchmark
+	public byte[] jdkSerialSerialize() {
+		return jdkSerial.serialize(sample);
+	}
+	
+	@Benchmark
+	public Sample jdkSerialDeserialize() {
+		return jdkSerial.deSerialize(jdkSerialBytes);
+	}
+	
+	@Benchmark
+	public byte[] toStringLongSerialize() {
+		return longText.serialize(longKey);
+	}
+	
+	@Benchmark
+	public Long toStringLongDeserialize() {
+		return longText.deSerialize(longTextBytes);
+	}
+	
+	@Benchmark
+	public byte[] toStringUUIDSerialize() {
+		return uuidText.serialize(uuidKey);
+	}
+	
+	@Benchmark
+	public UUID toStringUUIDDeserialize() {
+		return uuidText.deSerialize(uuidTextBytes);
+	}
+	
+	@Benchmark
+	public byte[] orderedLongSerialize() {
+		return longOrdered.serialize(longKey);
+	}
+	
+	@Benchmark
+	public Long orderedLongDeserialize() {
+		return longOrdered.deSerialize(longOrderedBytes);
+	}
+	
+	@Benchmark
+	public byte[] orderedUUIDSerialize() {
+		return uuidOrdered.serialize(uuidKey);
+	}
+	
+	@Benchmark
+	public UUID orderedUUIDDeserialize() {
+		return uuidOrdered.deSerialize(uuidOrderedBytes);
+	}
+	
+	@Benchmark
+	public byte[] binarySerialize() {
+		return binary.serialize(binaryValue);
+	}
+	
+	@Benchmark
+	public byte[] binaryDeserialize() {
+		return binary.deSerialize(binaryValue);
+	}
+}
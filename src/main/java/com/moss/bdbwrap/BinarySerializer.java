@@ -40,12 +40,20 @@
  */
 package com.moss.bdbwrap;
 
+import com.sleepycat.je.DatabaseEntry;
 
-public class BinarySerializer implements Serializer<byte[]>{
+
+public class BinarySerializer implements BufferSerializer<byte[]>{
 	public byte[] deSerialize(byte[] data) {
 		return data;
 	}
 	public byte[] serialize(byte[] data) {
 		return data;
 	}
+	public byte[] deSerialize(DatabaseEntry entry) {
+		return Entries.bytes(entry);
+	}
+	public void serialize(byte[] data, EntryBuffer out) {
+		out.write(data, 0, data.length);
+	}
 }
\ No newline at end of file
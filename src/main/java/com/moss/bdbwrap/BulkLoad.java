@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sleepycat.je.DatabaseException;
+
+/**
+ * Loads a database with its secondaries detached, then rebuilds each secondary
+ * in one pass over the primary.  Meanwhile reading a secondary, clearing the
+ * database or starting another bulk load of it fails, and writes made by other
+ * means won't be indexed until the rebuild.
+ * <p>
+ * The secondaries are removed as soon as the load begins, so if the process dies
+ * part way they are simply rebuilt the next time the environment is loaded.
+ * 
+ * <pre>
+ * BulkLoad&lt;K, V&gt; load = env.bulkLoad(db);
+ * try {
+ *     for (...) load.add(key, value);
+ * }
+ * finally {
+ *     load.finish();
+ * }
+ * </pre>
+ */
+public final class BulkLoad<K, V> {
+	private final Log log = LogFactory.getLog(getClass());
+	
+	private final DbWrap<K, V> db;
+	private final BulkWriter<K, V> writer;
+	private boolean finished;
+	
+	BulkLoad(DbWrap<K, V> db) {
+		this.db = db;
+		this.writer = new BulkWriter<K, V>(db).withChunkSize(10000);
+		
+		try {
+			for (SecondaryDbWrap<?, V> next : db.secondaries) {
+				if (log.isDebugEnabled()) {
+					log.debug("Detaching " + next.name + " for a bulk load of " + db.name);
+				}
+				next.database().close();
+				next.db = null;
+				db.envWrap.env.removeDatabase(null, next.name);
+			}
+		}
+		catch (DatabaseException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	/**
+	 * The writer the records go through, e.g. to change its chunk size.
+	 */
+	public BulkWriter<K, V> writer() {
+		return writer;
+	}
+	
+	public BulkLoad<K, V> add(K key, V value) {
+		writer.add(key, value);
+		return this;
+	}
+	
+	public BulkLoad<K, V> addAll(Map<K, V> records) {
+		writer.addAll(records);
+		return this;
+	}
+	
+	/**
+	 * Writes what's left and rebuilds the secondaries.  Call this even if the load
+	 * fails, to get the secondaries back.
+	 */
+	public void finish() {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		
+		try {
+			writer.flush();
+		}
+		finally {
+			for (SecondaryDbWrap<?, V> next : db.secondaries) {
+				if (log.isDebugEnabled()) {
+					log.debug("Rebuilding " + next.name);
+				}
+				try {
+					next.init();
+				}
+				catch (DatabaseException ex) {
+					throw new RuntimeException("Error rebuilding " + next.name, ex);
+				}
+			}
+		}
+	}
+}
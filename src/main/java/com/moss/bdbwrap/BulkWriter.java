@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.moss.bdbwrap.bdbsession.WorkAtom;
+import com.moss.bdbwrap.util.Bytes;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.Transaction;
+
+/**
+ * Writes many records quickly.  Records are serialized as they are added, then
+ * sorted by key so each transaction fills neighbouring pages, and written in
+ * transactions of a few thousand records each.  A transaction that hits a lock
+ * conflict is retried on its own; the ones before it stay committed.
+ * <p>
+ * Intercept hooks run as records are added, put hooks as they are written.
+ * 
+ * <pre>
+ * BulkWriter&lt;K, V&gt; writer = new BulkWriter&lt;K, V&gt;(db).withChunkSize(5000);
+ * for (...) writer.add(key, value);
+ * writer.flush();
+ * </pre>
+ */
+public class BulkWriter<K, V> {
+	private final Log log = LogFactory.getLog(getClass());
+	
+	private final DbWrap<K, V> db;
+	private final List<Record<K, V>> buffer = new ArrayList<Record<K, V>>();
+	private int chunkSize = 1000;
+	private int bufferSize = 100000;
+	private int attempts = 3;
+	private long written;
+	
+	public BulkWriter(DbWrap<K, V> db) {
+		this.db = db;
+	}
+	
+	/**
+	 * Records per transaction.
+	 */
+	public BulkWriter<K, V> withChunkSize(int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+		}
+		this.chunkSize = chunkSize;
+		return this;
+	}
+	
+	/**
+	 * Records held (and sorted together) before they are written.
+	 */
+	public BulkWriter<K, V> withBufferSize(int bufferSize) {
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+		}
+		this.bufferSize = bufferSize;
+		return this;
+	}
+	
+	/**
+	 * Tries per chunk before a lock conflict is given up on.
+	 */
+	public BulkWriter<K, V> withAttempts(int attempts) {
+		this.attempts = attempts;
+		return this;
+	}
+	
+	public BulkWriter<K, V> add(K key, V value) {
+		db.intercept(key, value);
+		buffer.add(new Record<K, V>(key, db.keySerializer.serialize(key), value, db.valueSerializer.serialize(value)));
+		if (buffer.size() >= bufferSize) {
+			flush();
+		}
+		return this;
+	}
+	
+	public BulkWriter<K, V> addAll(Map<K, V> records) {
+		for (Map.Entry<K, V> next : records.entrySet()) {
+			add(next.getKey(), next.getValue());
+		}
+		return this;
+	}
+	
+	/**
+	 * Writes everything added so far.  If a chunk fails the ones before it stay
+	 * written, and what's left is still buffered.
+	 */
+	public void flush() {
+		// stable, so for a repeated key the last one added wins
+		Collections.sort(buffer);
+		
+		int done = 0;
+		try {
+			while (done < buffer.size()) {
+				final List<Record<K, V>> chunk = buffer.subList(done, Math.min(buffer.size(), done + chunkSize));
+				new WorkAtom(db.envWrap) {
+					@Override
+					protected void doWork(Transaction tx) throws Exception {
+						for (Record<K, V> next : chunk) {
+							next.write(db, tx);
+						}
+					}
+				}.runRetry(attempts);
+				done += chunk.size();
+				written += chunk.size();
+			}
+		}
+		finally {
+			buffer.subList(0, done).clear();
+		}
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Wrote " + done + " records to " + db.name);
+		}
+	}
+	
+	/**
+	 * Records written since this writer was made.
+	 */
+	public long written() {
+		return written;
+	}
+	
+	public int buffered() {
+		return buffer.size();
+	}
+	
+	private static final class Record<K, V> implements Comparable<Record<K, V>> {
+		final K key;
+		final byte[] keyBytes;
+		final V value;
+		final byte[] valueBytes;
+		
+		Record(K key, byte[] keyBytes, V value, byte[] valueBytes) {
+			this.key = key;
+			this.keyBytes = keyBytes;
+			this.value = value;
+			this.valueBytes = valueBytes;
+		}
+		
+		void write(DbWrap<K, V> db, Transaction tx) {
+			DatabaseEntry keyEntry = new DatabaseEntry(keyBytes);
+			DatabaseEntry valueEntry = new DatabaseEntry(valueBytes);
+			db.write(tx, keyEntry, valueEntry, true);
+			db.putHappened(key, keyEntry, value, valueEntry);
+		}
+		
+		public int compareTo(Record<K, V> o) {
+			return Bytes.compare(keyBytes, o.keyBytes);
+		}
+	}
+}
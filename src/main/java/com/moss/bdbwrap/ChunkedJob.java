@@ -0,0 +1,375 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.moss.bdbwrap.bdbsession.WorkAtom;
+import com.moss.bdbwrap.util.Bytes;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.Transaction;
+
+/**
+ * Runs a {@link ValueWorker} over a store like {@link DbWrap#runJob(ValueWorker)},
+ * but in chunks: each chunk is its own transaction, ending after a number of records
+ * or a length of time, whichever comes first, and the job pauses between chunks so
+ * other writers get a turn.  A chunk that hits a lock conflict is retried on its own.
+ * <p>
+ * Without a {@link JobCheckpoint} the job remembers its place in memory only; with
+ * one, the place is saved in each chunk's transaction and a job that died picks up
+ * after the last chunk that committed.
+ * <p>
+ * Changes go through the cursor: secondaries are kept up to date and write listeners
+ * are told, but put hooks are not fired.  Stores with sorted duplicates can't be
+ * resumed by key, so they aren't supported.
+ */
+public class ChunkedJob <K, V> implements Runnable {
+	private final Log log = LogFactory.getLog(getClass());
+	
+	protected final DbWrap<K, V> db;
+	private final ValueWorker<V> worker;
+	private JobCheckpoint checkpoint;
+	private ByteRange range = ByteRange.ALL;
+	private int attempts = 3;
+	
+	private volatile int chunkSize = 1000;
+	private volatile long chunkMillis = 1000;
+	private volatile long pauseMillis = 0;
+	private volatile boolean stopped;
+	private volatile boolean finished;
+	private volatile Throwable failure;
+	private volatile long visited;
+	private volatile long updated;
+	private volatile long deleted;
+	private Thread thread;
+	
+	public ChunkedJob(DbWrap<K, V> db, ValueWorker<V> worker) {
+		super();
+		this.db = db;
+		this.worker = worker;
+	}
+	
+	/**
+	 * For jobs that override {@link #process(DatabaseEntry, DatabaseEntry, Cursor)}.
+	 */
+	protected ChunkedJob(DbWrap<K, V> db) {
+		this(db, null);
+	}
+	
+	/**
+	 * The most records per chunk; can be changed while the job runs.
+	 */
+	public ChunkedJob<K, V> withChunkSize(int chunkSize) {
+		if (chunkSize < 1) {
+			throw new RuntimeException("Chunk size must be at least 1");
+		}
+		this.chunkSize = chunkSize;
+		return this;
+	}
+	
+	/**
+	 * How long a chunk may run before it commits; can be changed while the job runs.
+	 */
+	public ChunkedJob<K, V> withChunkTime(long chunkMillis) {
+		this.chunkMillis = chunkMillis;
+		return this;
+	}
+	
+	/**
+	 * The pause between chunks; can be changed while the job runs.
+	 */
+	public ChunkedJob<K, V> withPause(long pauseMillis) {
+		this.pauseMillis = pauseMillis;
+		return this;
+	}
+	
+	/**
+	 * Limits the job to the keys in the range, which must run forward without a limit.
+	 */
+	public ChunkedJob<K, V> withRange(KeyRange<K> range) {
+		return withRange(range.toBytes(db.keySerializer));
+	}
+	
+	ChunkedJob<K, V> withRange(ByteRange range) {
+		if (range.reverse || range.limit >= 0) {
+			throw new RuntimeException("A chunked job can only walk a range forward and to its end");
+		}
+		this.range = range;
+		return this;
+	}
+	
+	public ChunkedJob<K, V> withCheckpoint(JobCheckpoint checkpoint) {
+		this.checkpoint = checkpoint;
+		return this;
+	}
+	
+	/**
+	 * How many times a chunk is tried before a lock conflict ends the job.
+	 */
+	public ChunkedJob<K, V> withAttempts(int attempts) {
+		this.attempts = attempts;
+		return this;
+	}
+	
+	public synchronized void start() {
+		if (thread != null) {
+			throw new RuntimeException("Already started");
+		}
+		thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					ChunkedJob.this.run();
+				}
+				catch (Throwable ex) {
+					// kept for failure() and join()
+					log.error("Job over '" + db.name + "' failed", ex);
+				}
+			}
+		}, "job-" + db.name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Stops the job after the chunk in progress.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+	
+	public boolean isFinished() {
+		return finished;
+	}
+	
+	/**
+	 * What the job died of, or null if it hasn't.  Chunks committed before the
+	 * failure stay committed.
+	 */
+	public Throwable failure() {
+		return failure;
+	}
+	
+	/**
+	 * Waits for a started job to end, and throws if it failed.
+	 */
+	public void join() throws InterruptedException {
+		Thread running;
+		synchronized (this) {
+			running = thread;
+		}
+		if (running != null) {
+			running.join();
+		}
+		if (failure != null) {
+			throw new RuntimeException("Job over '" + db.name + "' failed", failure);
+		}
+	}
+	
+	public long visited() {
+		return visited;
+	}
+	
+	public long updated() {
+		return updated;
+	}
+	
+	public long deleted() {
+		return deleted;
+	}
+	
+	/**
+	 * Runs the job on the calling thread until it finishes or is stopped.  An
+	 * interrupt that ends it early counts as a failure unless {@link #stop()} was
+	 * called.
+	 */
+	public void run() {
+		try {
+			walk();
+		}
+		catch (RuntimeException ex) {
+			failure = ex;
+			throw ex;
+		}
+		catch (Error ex) {
+			failure = ex;
+			throw ex;
+		}
+	}
+	
+	private void walk() {
+		if (db.db.getConfig().getSortedDuplicates()) {
+			throw new RuntimeException("Cannot run a chunked job over '" + db.name + "' because it has sorted duplicates");
+		}
+		byte[] resumeKey = null;
+		
+		while (!stopped) {
+			Chunk chunk = new Chunk(resumeKey);
+			chunk.runRetry(attempts);
+			
+			visited += chunk.visited;
+			updated += chunk.updated;
+			deleted += chunk.deleted;
+			resumeKey = chunk.lastKey;
+			
+			if (chunk.exhausted) {
+				finished = true;
+				if (log.isDebugEnabled()) {
+					log.debug("Finished job over '" + db.name + "': " + visited + " records visited, " + updated + " updated, " + deleted + " deleted");
+				}
+				return;
+			}
+			
+			try {
+				Thread.sleep(pauseMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				if (stopped) {
+					return;
+				}
+				throw new RuntimeException("Job over '" + db.name + "' interrupted after " + visited + " records", e);
+			}
+		}
+	}
+	
+	/**
+	 * What to do with the record under the cursor; by default, asks the worker.
+	 */
+	protected ValueWorker.Result<V> process(DatabaseEntry key, DatabaseEntry data, Cursor cursor) {
+		return worker.next(db.readValue(data), cursor);
+	}
+	
+	private class Chunk extends WorkAtom {
+		private final byte[] resumeKey;
+		byte[] lastKey;
+		int visited, updated, deleted;
+		boolean exhausted;
+		
+		Chunk(byte[] resumeKey) {
+			super(db.envWrap);
+			this.resumeKey = resumeKey;
+		}
+		
+		@Override
+		protected void doWork(Transaction tx) throws Exception {
+			byte[] from = checkpoint == null ? resumeKey : checkpoint.load(tx);
+			lastKey = from;
+			visited = 0;
+			updated = 0;
+			deleted = 0;
+			exhausted = false;
+			
+			Cursor cursor = db.db.openCursor(tx, null);
+			try {
+				DatabaseEntry key = new DatabaseEntry();
+				DatabaseEntry data = new DatabaseEntry();
+				OperationStatus status;
+				if (from != null) {
+					status = seek(cursor, key, data, from, false);
+				}
+				else if (range.from != null) {
+					status = seek(cursor, key, data, range.from, range.fromInclusive);
+				}
+				else {
+					status = cursor.getFirst(key, data, LockMode.RMW);
+				}
+				
+				int size = chunkSize;
+				long deadline = System.currentTimeMillis() + chunkMillis;
+				while (status == OperationStatus.SUCCESS && inRange(key)) {
+					ValueWorker.Result<V> result = process(key, data, cursor);
+					switch (result.op) {
+					case DELETE:
+						cursor.delete();
+						db.deleted(key, tx);
+						deleted++;
+						break;
+					case UPDATE:
+						cursor.putCurrent(db.scratchValue(result.value));
+						db.fireWritten(key, tx);
+						updated++;
+						break;
+					case NOTHING:
+						break;
+					default: throw new RuntimeException("Unknown result op: " + result.op);
+					}
+					visited++;
+					lastKey = Entries.bytes(key);
+					
+					if (visited >= size || System.currentTimeMillis() >= deadline) {
+						break;
+					}
+					status = cursor.getNext(key, data, LockMode.RMW);
+				}
+				exhausted = status != OperationStatus.SUCCESS || !inRange(key);
+			}
+			finally {
+				cursor.close();
+			}
+			
+			if (checkpoint != null) {
+				if (exhausted) {
+					checkpoint.clear(tx);
+				}
+				else {
+					checkpoint.save(lastKey, tx);
+				}
+			}
+		}
+		
+		private OperationStatus seek(Cursor cursor, DatabaseEntry key, DatabaseEntry data, byte[] bound, boolean inclusive) {
+			key.setData(bound);
+			OperationStatus status = cursor.getSearchKeyRange(key, data, LockMode.RMW);
+			if (status == OperationStatus.SUCCESS && !inclusive && Bytes.compare(key, bound) == 0) {
+				status = cursor.getNext(key, data, LockMode.RMW);
+			}
+			return status;
+		}
+		
+		private boolean inRange(DatabaseEntry key) {
+			if (range.to == null) {
+				return true;
+			}
+			int c = Bytes.compare(key, range.to);
+			return c < 0 || (c == 0 && range.toInclusive);
+		}
+	}
+}
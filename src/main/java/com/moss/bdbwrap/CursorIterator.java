@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * Iterates a range of records through an open cursor, reading each one only when
+ * asked for it.  The cursor is closed when the iterator runs out; if you stop
+ * early, close it yourself:
+ * 
+ * <pre>
+ * CursorIterator&lt;V&gt; values = db.values(range, t).iterator();
+ * try {
+ *     while (values.hasNext()) ...
+ * }
+ * finally {
+ *     values.close();
+ * }
+ * </pre>
+ */
+public final class CursorIterator<T> implements Iterator<T>, Closeable {
+	private final Cursor cursor;
+	private final RangeCursor range;
+	private final EntryDecoder<T> decoder;
+	private final DatabaseEntry key = new DatabaseEntry();
+	private final DatabaseEntry data = new DatabaseEntry();
+	private boolean fetched;
+	private boolean found;
+	private boolean closed;
+	
+	CursorIterator(Cursor cursor, ByteRange range, EntryDecoder<T> decoder, boolean keysOnly) {
+		this.cursor = cursor;
+		this.range = new RangeCursor(cursor, range, null);
+		this.decoder = decoder;
+		if (keysOnly) {
+			data.setPartial(0, 0, true);
+		}
+	}
+	
+	public boolean hasNext() {
+		if (closed) {
+			return false;
+		}
+		if (!fetched) {
+			try {
+				found = range.next(key, data);
+			}
+			catch (RuntimeException ex) {
+				close();
+				throw ex;
+			}
+			fetched = true;
+			if (!found) {
+				close();
+			}
+		}
+		return found;
+	}
+	
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		fetched = false;
+		return decoder.decode(key, data);
+	}
+	
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+	
+	public void close() {
+		if (!closed) {
+			closed = true;
+			found = false;
+			cursor.close();
+		}
+	}
+}
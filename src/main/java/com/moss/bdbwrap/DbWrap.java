@@ -42,8 +42,16 @@ package com.moss.bdbwrap;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -64,7 +72,9 @@ public class DbWrap<K, V> {
 		
 		private final List<PutHook<K, V>> hooks = new ArrayList<PutHook<K,V>>();
 		private final List<PutInterceptHook<K, V>> intercepts = new ArrayList<PutInterceptHook<K, V>>();
+		private final List<WriteListener> listeners = new CopyOnWriteArrayList<WriteListener>();
 		private boolean permitDuplicates = new DatabaseConfig().getSortedDuplicates();
+		private KeyFilter keyFilter;
 		
 		public final EnvironmentWrap envWrap;
 		public final String name;
@@ -74,6 +84,9 @@ public class DbWrap<K, V> {
 		
 		public Database db;
 		
+		private final EntryBuffer.PerThread keyBuffers = new EntryBuffer.PerThread();
+		private final EntryBuffer.PerThread valueBuffers = new EntryBuffer.PerThread();
+		
 		public DbWrap(String name, Serializer<K> keySerializer, Serializer<V> valueSerializer, final EnvironmentWrap environment, PutHook<K, V> ... hooks) {
 			super();
 			this.name = name;
@@ -98,10 +111,95 @@ public class DbWrap<K, V> {
 			return this;
 		}
 		
+		/**
+		 * Keeps a bloom filter of the keys, built when the database is opened, so that
+		 * lookups of missing keys usually don't touch the database.
+		 */
+		public DbWrap<K, V> withBloomFilter(long expectedKeys, double falsePositiveRate){
+			if(db!=null) throw new RuntimeException("I won't let you add a bloom filter on-the-fly to an open database.");
+			keyFilter = new KeyFilter(name, expectedKeys, falsePositiveRate);
+			return this;
+		}
+		
+		/**
+		 * Unlike hooks, listeners may come and go while the database is open.
+		 */
+		public DbWrap<K, V> withListener(WriteListener listener){
+			listeners.add(listener);
+			return this;
+		}
+		
+		public void removeListener(WriteListener listener){
+			listeners.remove(listener);
+		}
+		
+		void fireWritten(DatabaseEntry key, Transaction t){
+			if(listeners.isEmpty()) return;
+			for(WriteListener next : listeners){
+				next.written(key, t);
+			}
+		}
+		
+		/**
+		 * Every put goes through here, to keep the key filter and the listeners informed.
+		 */
+		OperationStatus write(Transaction t, DatabaseEntry key, DatabaseEntry data, boolean overwrite){
+			OperationStatus status;
+			if(keyFilter!=null) keyFilter.writing(key);
+			try {
+				status = overwrite ? db.put(t, key, data) : db.putNoOverwrite(t, key, data);
+			}
+			finally {
+				if(keyFilter!=null) keyFilter.written(db);
+			}
+			if(OperationStatus.SUCCESS == status){
+				fireWritten(key, t);
+			}
+			return status;
+		}
+		
+		OperationStatus remove(Transaction t, DatabaseEntry key){
+			OperationStatus status = db.delete(t, key);
+			if (status == OperationStatus.SUCCESS) {
+				deleted(key, t);
+			}
+			return status;
+		}
+		
+		/**
+		 * For deletes made some other way, e.g. through a cursor.
+		 */
+		void deleted(DatabaseEntry key, Transaction t){
+			if(keyFilter!=null) keyFilter.deleted(db);
+			fireWritten(key, t);
+		}
+		
+		/**
+		 * False if the key is certainly not in the database.
+		 */
+		boolean mightContain(DatabaseEntry key){
+			return keyFilter==null || keyFilter.mightContain(key);
+		}
 		
 		boolean hasInitialized(){
 			return db!=null;
 		}
+		
+		boolean hasHooks(){
+			return !hooks.isEmpty() || !intercepts.isEmpty();
+		}
+		
+		void intercept(K key, V value){
+			for(PutInterceptHook<K, V> hook : intercepts){
+				hook.intercept(key, value);
+			}
+		}
+		
+		void putHappened(K key, DatabaseEntry keyEntry, V value, DatabaseEntry dataEntry){
+			for(PutHook<K, V> hook : hooks){
+				hook.putHappened(key, keyEntry, value, dataEntry, this);
+			}
+		}
 		protected void init() throws DatabaseException {
 			if (log.isDebugEnabled()) {
 				log.debug("Opening '" + name + "' database");
@@ -113,13 +211,45 @@ public class DbWrap<K, V> {
 			dbConfig.setSortedDuplicates(permitDuplicates);
 			
 			db = envWrap.env.openDatabase(null, name, dbConfig);
+			
+			if(keyFilter!=null){
+				keyFilter.build(db);
+			}
 		}
 		
 		public void delete(K key, Transaction t) throws DatabaseException {
 
 			DatabaseEntry keyEntry;
-			keyEntry = new DatabaseEntry(keySerializer.serialize(key));
-			db.delete(t, keyEntry);
+			keyEntry = scratchKey(key);
+			remove(t, keyEntry);
+		}
+		
+		/**
+		 * The serialized key in this thread's key buffer; only valid until the next
+		 * scratch call on this thread.
+		 */
+		DatabaseEntry scratchKey(K key) {
+			return Entries.write(keySerializer, key, keyBuffers.acquire(), new DatabaseEntry());
+		}
+		
+		DatabaseEntry scratchValue(V value) {
+			return Entries.write(valueSerializer, value, valueBuffers.acquire(), new DatabaseEntry());
+		}
+		
+		byte[] keyBytes(K key) {
+			return Entries.toBytes(keySerializer, key, keyBuffers.acquire());
+		}
+		
+		byte[] valueBytes(V value) {
+			return Entries.toBytes(valueSerializer, value, valueBuffers.acquire());
+		}
+		
+		K readKey(DatabaseEntry entry) {
+			return Entries.read(keySerializer, entry);
+		}
+		
+		V readValue(DatabaseEntry entry) {
+			return Entries.read(valueSerializer, entry);
 		}
 		
 		/**
@@ -137,6 +267,10 @@ public class DbWrap<K, V> {
 			);
 		}
 		
+		/**
+		 * Runs the worker over every record in one transaction; for big stores that
+		 * are in use, see {@link ChunkedJob}.
+		 */
 		public void runJob(final ValueWorker<V> worker){
 			new WorkAtom(this.envWrap) {
 				
@@ -157,15 +291,16 @@ public class DbWrap<K, V> {
 						
 						while (OperationStatus.SUCCESS == loopCursor.getNext(key, data, null)) {
 							
-							V value = valueSerializer.deSerialize(data.getData());//read(type, data);
+							V value = readValue(data);
 							ValueWorker.Result<V> result = worker.next(value, loopCursor);
 							switch(result.op){
 							case DELETE:
 								loopCursor.delete();
+								deleted(key, tx);
 								break;
 							case UPDATE:
-								data.setData(valueSerializer.serialize(result.value));
-								loopCursor.putCurrent(data);
+								loopCursor.putCurrent(scratchValue(result.value));
+								fireWritten(key, tx);
 								break;
 							case NOTHING:
 								break;
@@ -213,7 +348,7 @@ public class DbWrap<K, V> {
 				
 				while (OperationStatus.SUCCESS == loopCursor.getNext(key, data, null)) {
 					
-					V expense = valueSerializer.deSerialize(data.getData());//read(type, data);
+					V expense = readValue(data);
 					visitor.inspect(expense);
 				}
 				
@@ -249,7 +384,7 @@ public class DbWrap<K, V> {
 				
 				while (OperationStatus.SUCCESS == loopCursor.getNext(key, data, null)) {
 					
-					V value = valueSerializer.deSerialize(data.getData());
+					V value = readValue(data);
 					visitor.inspect(value);
 				}
 				
@@ -283,8 +418,8 @@ public class DbWrap<K, V> {
 				DatabaseEntry data = new DatabaseEntry();
 				
 				while (OperationStatus.SUCCESS == loopCursor.getNext(key, data, null)) {
-					K k = keySerializer.deSerialize(key.getData());
-					V v = valueSerializer.deSerialize(data.getData());//read(type, data);
+					K k = readKey(key);
+					V v = readValue(data);
 					
 					boolean continueSearch = visitor.next(k, v);
 					
@@ -311,7 +446,425 @@ public class DbWrap<K, V> {
 			}
 		}
 		
+		/**
+		 * Like {@link #scan(ValueScanner, Transaction)}, but values are only deserialized
+		 * when the scanner asks for them.
+		 */
+		public void scanLazy(ValueScanner<LazyValue<V>> visitor, Transaction t) {
+			
+			Cursor loopCursor = null;
+			
+			try {
+				CursorConfig cursorConfig = new CursorConfig();
+				loopCursor = db.openCursor(t, cursorConfig);
+				
+				DatabaseEntry key = new DatabaseEntry();
+				DatabaseEntry data = new DatabaseEntry();
+				
+				while (OperationStatus.SUCCESS == loopCursor.getNext(key, data, null)) {
+					visitor.inspect(LazyValue.of(valueSerializer, data));
+				}
+				
+				loopCursor.close();
+				loopCursor = null;
+			}
+			catch (Throwable ex) {
+				
+				try {
+					if (loopCursor != null) {
+						loopCursor.close();
+					}
+				}
+				catch (Exception e) {
+					ex.printStackTrace();
+				}
+				
+				throw new RuntimeException(ex);
+			}
+		}
+		
+		/**
+		 * Like {@link #search(SearchVisitor)}, but values are only deserialized when the
+		 * visitor asks for them; keys are always decoded.
+		 */
+		public void searchLazy(SearchVisitor<K, LazyValue<V>> visitor, Transaction t) {
+			
+			Cursor loopCursor = null;
+			
+			try {
+				CursorConfig cursorConfig = new CursorConfig();
+				loopCursor = db.openCursor(t, cursorConfig);
+				
+				DatabaseEntry key = new DatabaseEntry();
+				DatabaseEntry data = new DatabaseEntry();
+				
+				while (OperationStatus.SUCCESS == loopCursor.getNext(key, data, null)) {
+					K k = readKey(key);
+					
+					boolean continueSearch = visitor.next(k, LazyValue.of(valueSerializer, data));
+					
+					if (!continueSearch) {
+						break;
+					}
+				}
+				
+				loopCursor.close();
+				loopCursor = null;
+			}
+			catch (Throwable ex) {
+				
+				try {
+					if (loopCursor != null) {
+						loopCursor.close();
+					}
+				}
+				catch (Exception e) {
+					ex.printStackTrace();
+				}
+				
+				throw new RuntimeException(ex);
+			}
+		}
+		
+		/**
+		 * Like {@link #scan(ValueScanner, Transaction)}, over the records in the range.
+		 */
+		public void scan(KeyRange<K> range, final ValueScanner<V> visitor, Transaction t) {
+			scanRange(range.toBytes(keySerializer), t, null, new RawVisitor() {
+				public boolean next(DatabaseEntry key, DatabaseEntry data) {
+					visitor.inspect(readValue(data));
+					return true;
+				}
+			});
+		}
+		
+		/**
+		 * Like {@link #scanUncommitted(ValueScanner)}, over the records in the range.
+		 */
+		public void scanUncommitted(KeyRange<K> range, final ValueScanner<V> visitor) {
+			CursorConfig cursorConfig = new CursorConfig();
+			cursorConfig.setReadUncommitted(true);
+			scanRange(range.toBytes(keySerializer), null, cursorConfig, new RawVisitor() {
+				public boolean next(DatabaseEntry key, DatabaseEntry data) {
+					visitor.inspect(readValue(data));
+					return true;
+				}
+			});
+		}
+		
+		/**
+		 * Visits the records in the range until the visitor returns false.
+		 */
+		public void search(KeyRange<K> range, final SearchVisitor<K, V> visitor, Transaction t) {
+			scanRange(range.toBytes(keySerializer), t, null, new RawVisitor() {
+				public boolean next(DatabaseEntry key, DatabaseEntry data) {
+					return visitor.next(readKey(key), readValue(data));
+				}
+			});
+		}
+		
+		/**
+		 * Like {@link #search(KeyRange, SearchVisitor, Transaction)}, but values are only
+		 * deserialized when the visitor asks for them.
+		 */
+		public void searchLazy(KeyRange<K> range, final SearchVisitor<K, LazyValue<V>> visitor, Transaction t) {
+			scanRange(range.toBytes(keySerializer), t, null, new RawVisitor() {
+				public boolean next(DatabaseEntry key, DatabaseEntry data) {
+					return visitor.next(readKey(key), LazyValue.of(valueSerializer, data));
+				}
+			});
+		}
+		
+		/**
+		 * Up to {@code size} records of the range, starting after the page the token
+		 * came from, or at the start of the range if the token is null.  The range must
+		 * run forward, without a limit, and be the same for every page.
+		 */
+		public Page<KeyValue<K, V>> page(KeyRange<K> range, String token, int size, Transaction t) {
+			Cursor cursor = null;
+			try {
+				cursor = db.openCursor(t, null);
+				Page<KeyValue<K, V>> page = new Pager(cursor, range.toBytes(keySerializer), permitDuplicates).read(token, size, new EntryDecoder<KeyValue<K, V>>() {
+					public KeyValue<K, V> decode(DatabaseEntry key, DatabaseEntry data) {
+						return new KeyValue<K, V>(readKey(key), readValue(data));
+					}
+				});
+				cursor.close();
+				cursor = null;
+				return page;
+			}
+			catch (Throwable ex) {
+				try {
+					if (cursor != null) {
+						cursor.close();
+					}
+				}
+				catch (Exception e) {
+					ex.printStackTrace();
+				}
+				throw new RuntimeException(ex);
+			}
+		}
+		
+		/**
+		 * Like {@link #scan(ValueScanner, Transaction)}, but values are deserialized on
+		 * the executor while the cursor reads ahead.  The scanner is still called on
+		 * this thread, in key order if {@code ordered}, otherwise as values are ready.
+		 */
+		public void scanPipelined(final ValueScanner<V> scanner, Transaction t, ExecutorService executor, boolean ordered) {
+			Pipeline<V> pipeline = new Pipeline<V>(new EntryDecoder<V>() {
+				public V decode(DatabaseEntry key, DatabaseEntry data) {
+					return readValue(data);
+				}
+			}, executor, ordered) {
+				boolean deliver(V value) {
+					scanner.inspect(value);
+					return true;
+				}
+			};
+			try {
+				scanRange(ByteRange.ALL, t, null, pipeline);
+				pipeline.finish();
+			}
+			finally {
+				pipeline.cancel();
+			}
+		}
+		
+		/**
+		 * Like {@link #search(KeyRange, SearchVisitor, Transaction)}, but records are
+		 * deserialized on the executor while the cursor reads ahead; see
+		 * {@link #scanPipelined(ValueScanner, Transaction, ExecutorService, boolean)}.
+		 */
+		public void searchPipelined(KeyRange<K> range, final SearchVisitor<K, V> visitor, Transaction t, ExecutorService executor, boolean ordered) {
+			Pipeline<KeyValue<K, V>> pipeline = new Pipeline<KeyValue<K, V>>(new EntryDecoder<KeyValue<K, V>>() {
+				public KeyValue<K, V> decode(DatabaseEntry key, DatabaseEntry data) {
+					return new KeyValue<K, V>(readKey(key), readValue(data));
+				}
+			}, executor, ordered) {
+				boolean deliver(KeyValue<K, V> record) {
+					return visitor.next(record.getKey(), record.getValue());
+				}
+			};
+			try {
+				scanRange(range.toBytes(keySerializer), t, null, pipeline);
+				pipeline.finish();
+			}
+			finally {
+				pipeline.cancel();
+			}
+		}
+		
+		/**
+		 * The records in the range, read as they are iterated; see {@link CursorIterator}
+		 * about closing.
+		 */
+		public RangeView<KeyValue<K, V>> entries(KeyRange<K> range, Transaction t) {
+			return new RangeView<KeyValue<K, V>>(db, t, range.toBytes(keySerializer), new EntryDecoder<KeyValue<K, V>>() {
+				public KeyValue<K, V> decode(DatabaseEntry key, DatabaseEntry data) {
+					return new KeyValue<K, V>(readKey(key), readValue(data));
+				}
+			}, false);
+		}
+		
+		public RangeView<V> values(KeyRange<K> range, Transaction t) {
+			return new RangeView<V>(db, t, range.toBytes(keySerializer), new EntryDecoder<V>() {
+				public V decode(DatabaseEntry key, DatabaseEntry data) {
+					return readValue(data);
+				}
+			}, false);
+		}
+		
+		/**
+		 * The keys in the range; values aren't read at all.
+		 */
+		public RangeView<K> keys(KeyRange<K> range, Transaction t) {
+			return new RangeView<K>(db, t, range.toBytes(keySerializer), new EntryDecoder<K>() {
+				public K decode(DatabaseEntry key, DatabaseEntry data) {
+					return readKey(key);
+				}
+			}, true);
+		}
+		
+		/**
+		 * Visits the keys in the range until the visitor returns false, without reading
+		 * any values.
+		 */
+		public void scanKeys(KeyRange<K> range, final KeyVisitor<K> visitor, Transaction t) {
+			scanRange(range.toBytes(keySerializer), t, null, true, new RawVisitor() {
+				public boolean next(DatabaseEntry key, DatabaseEntry data) {
+					return visitor.next(readKey(key));
+				}
+			});
+		}
+		
+		/**
+		 * The number of records in the range, as seen by the transaction; values aren't read.
+		 */
+		public long count(KeyRange<K> range, Transaction t) {
+			final long[] count = new long[1];
+			scanRange(range.toBytes(keySerializer), t, null, true, new RawVisitor() {
+				public boolean next(DatabaseEntry key, DatabaseEntry data) {
+					count[0]++;
+					return true;
+				}
+			});
+			return count[0];
+		}
+		
+		/**
+		 * The exact number of records, as seen by the transaction.
+		 */
+		public long count(Transaction t) {
+			return count(KeyRange.<K>all(), t);
+		}
+		
+		/**
+		 * The number of records, counted from the btree without taking locks or loading
+		 * records into the cache.  Much cheaper than {@link #count(Transaction)}, but
+		 * writes in flight may or may not be included.
+		 */
+		public long countEstimate() {
+			try {
+				return db.count();
+			}
+			catch (DatabaseException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+		
+		/**
+		 * Scans the database in parts, each on its own cursor and thread.  The scanner
+		 * is called from several threads at once, and sees committed data only.
+		 */
+		public void scanParallel(final ValueScanner<V> scanner, int parts, ExecutorService executor) {
+			reduce(new Reducer<V, Object>() {
+				public Object initial() {
+					return null;
+				}
+				public Object add(Object result, V value) {
+					scanner.inspect(value);
+					return null;
+				}
+				public Object combine(Object earlier, Object later) {
+					return null;
+				}
+			}, parts, executor);
+		}
+		
+		/**
+		 * Reduces the values of the database in parts, each on its own cursor and thread.
+		 * Parts are cut by key, not by record count, so with uneven keys ask for a few
+		 * times as many parts as the executor has threads.
+		 */
+		public <R> R reduce(final Reducer<V, R> reducer, int parts, ExecutorService executor) {
+			List<ByteRange> ranges = split(parts);
+			List<Future<R>> results = new ArrayList<Future<R>>(ranges.size());
+			final AtomicBoolean stopped = new AtomicBoolean();
+			
+			for (final ByteRange range : ranges) {
+				results.add(executor.submit(new Callable<R>() {
+					public R call() throws Exception {
+						final List<R> result = new ArrayList<R>(1);
+						result.add(reducer.initial());
+						scanRange(range, null, CursorConfig.READ_COMMITTED, new RawVisitor() {
+							public boolean next(DatabaseEntry key, DatabaseEntry data) {
+								result.set(0, reducer.add(result.get(0), readValue(data)));
+								return !stopped.get();
+							}
+						});
+						return result.get(0);
+					}
+				}));
+			}
+			
+			try {
+				R combined = null;
+				for (int i = 0; i < results.size(); i++) {
+					R next = results.get(i).get();
+					combined = i == 0 ? next : reducer.combine(combined, next);
+				}
+				return combined == null ? reducer.initial() : combined;
+			}
+			catch (InterruptedException ex) {
+				throw new RuntimeException(ex);
+			}
+			catch (ExecutionException ex) {
+				throw new RuntimeException(ex.getCause());
+			}
+			finally {
+				// interrupting a thread in JE I/O would invalidate the environment, so
+				// parts still running are asked to stop at their next record instead
+				stopped.set(true);
+				for (Future<R> next : results) {
+					next.cancel(false);
+				}
+			}
+		}
+		
+		/**
+		 * Up to {@code parts} ranges that together cover every key.
+		 */
+		List<ByteRange> split(int parts) {
+			List<ByteRange> ranges = new ArrayList<ByteRange>(parts);
+			byte[] from = null;
+			for (byte[] point : KeySplitter.splitPoints(db, null, null, parts)) {
+				ranges.add(new ByteRange(from, true, point, false, false, -1));
+				from = point;
+			}
+			ranges.add(new ByteRange(from, true, null, true, false, -1));
+			return ranges;
+		}
+		
+		void scanRange(ByteRange range, Transaction t, CursorConfig config, RawVisitor visitor) {
+			scanRange(range, t, config, false, visitor);
+		}
+		
+		/**
+		 * @param keysOnly read no record data; the visitor gets an empty data entry
+		 */
+		void scanRange(ByteRange range, Transaction t, CursorConfig config, boolean keysOnly, RawVisitor visitor) {
+			
+			Cursor loopCursor = null;
+			
+			try {
+				loopCursor = db.openCursor(t, config);
+				RangeCursor rangeCursor = new RangeCursor(loopCursor, range, null);
+				
+				DatabaseEntry key = new DatabaseEntry();
+				DatabaseEntry data = new DatabaseEntry();
+				if (keysOnly) {
+					data.setPartial(0, 0, true);
+				}
+				
+				while (rangeCursor.next(key, data)) {
+					if (!visitor.next(key, data)) {
+						break;
+					}
+				}
+				
+				loopCursor.close();
+				loopCursor = null;
+			}
+			catch (Throwable ex) {
+				
+				try {
+					if (loopCursor != null) {
+						loopCursor.close();
+					}
+				}
+				catch (Exception e) {
+					ex.printStackTrace();
+				}
+				
+				throw new RuntimeException(ex);
+			}
+		}
+		
 		public void clear() throws DatabaseException {
+			for(SecondaryDbWrap<?, V> next : secondaries){
+				next.database();
+			}
 			for(SecondaryDbWrap<?, V> next : secondaries){
 				next.db.close();
 			}
@@ -325,7 +878,9 @@ public class DbWrap<K, V> {
 			for(SecondaryDbWrap<?, V> next : secondaries){
 				next.init();
 			}
-
+			for(WriteListener next : listeners){
+				next.cleared();
+			}
 		}
 		
 		public void put(K key, V value, Transaction t){
@@ -334,15 +889,11 @@ public class DbWrap<K, V> {
 			}
 			
 			try {
-				for(PutInterceptHook<K, V> hook : intercepts){
-					hook.intercept(key, value);
-				}
-				DatabaseEntry keyEntry = new DatabaseEntry(keySerializer.serialize(key));
-				DatabaseEntry dataEntry = new DatabaseEntry(valueSerializer.serialize(value));
-				db.put(t, keyEntry, dataEntry);
-				for(PutHook<K, V> hook : hooks){
-					hook.putHappened(key, keyEntry, value, dataEntry, this);
-				}
+				intercept(key, value);
+				DatabaseEntry keyEntry = hooks.isEmpty() ? scratchKey(key) : new DatabaseEntry(keyBytes(key));
+				DatabaseEntry dataEntry = hooks.isEmpty() ? scratchValue(value) : new DatabaseEntry(valueBytes(value));
+				write(t, keyEntry, dataEntry, true);
+				putHappened(key, keyEntry, value, dataEntry);
 			}
 			catch (Exception ex) {
 				throw new RuntimeException(ex);
@@ -356,13 +907,13 @@ public class DbWrap<K, V> {
 				log.debug("Copying entry from " + from.name + " to "+ name + " (" + key + ")");
 			}
 			
-			DatabaseEntry k = new DatabaseEntry(keySerializer.serialize(key));
+			DatabaseEntry k = scratchKey(key);
 			DatabaseEntry v = new DatabaseEntry();
 			OperationStatus status = from.db.get(t, k, v, LockMode.READ_COMMITTED);
 			if (status != OperationStatus.SUCCESS) {
 				throw new RuntimeException("Could not find value for copy: " + key);
 			}
-			db.put(t, k, v);
+			write(t, k, v, true);
 		}
 		
 		public void moveFrom(K key, DbWrap<K, V> from, Transaction t) {
@@ -371,14 +922,21 @@ public class DbWrap<K, V> {
 				log.debug("Moving entry from " + from.name + " to "+ name + " (" + key + ")");
 			}
 			
-			DatabaseEntry k = new DatabaseEntry(keySerializer.serialize(key));
+			DatabaseEntry k = scratchKey(key);
 			DatabaseEntry v = new DatabaseEntry();
 			OperationStatus status = from.db.get(t, k, v, LockMode.READ_COMMITTED);
 			if (status != OperationStatus.SUCCESS) {
 				throw new RuntimeException("Could not find value for copy: " + key);
 			}
-			from.db.delete(t, k);
-			db.put(t, k, v);
+			from.remove(t, k);
+			write(t, k, v, true);
+		}
+		
+		/**
+		 * Writes the records in key order, in chunked transactions; see {@link BulkWriter}.
+		 */
+		public void putAll(Map<K, V> records){
+			new BulkWriter<K, V>(this).addAll(records).flush();
 		}
 		
 		public OperationStatus putNoOverwrite(K key, V value, Transaction t){
@@ -387,16 +945,12 @@ public class DbWrap<K, V> {
 			}
 			
 			try {
-				for(PutInterceptHook<K, V> hook : intercepts){
-					hook.intercept(key, value);
-				}
-				DatabaseEntry keyEntry = new DatabaseEntry(keySerializer.serialize(key));
-				DatabaseEntry dataEntry = new DatabaseEntry(valueSerializer.serialize(value));
-				OperationStatus status = db.putNoOverwrite(t, keyEntry, dataEntry);
+				intercept(key, value);
+				DatabaseEntry keyEntry = hooks.isEmpty() ? scratchKey(key) : new DatabaseEntry(keyBytes(key));
+				DatabaseEntry dataEntry = hooks.isEmpty() ? scratchValue(value) : new DatabaseEntry(valueBytes(value));
+				OperationStatus status = write(t, keyEntry, dataEntry, false);
 				if (OperationStatus.SUCCESS == status) {
-					for(PutHook<K, V> hook : hooks){
-						hook.putHappened(key, keyEntry, value, dataEntry, this);
-					}
+					putHappened(key, keyEntry, value, dataEntry);
 				}
 				return status;
 			}
@@ -408,11 +962,11 @@ public class DbWrap<K, V> {
 		
 		public V get(K keyd, Transaction t, LockMode mode){
 			try {
-				DatabaseEntry key = new DatabaseEntry(keySerializer.serialize(keyd));
+				DatabaseEntry key = scratchKey(keyd);
 				DatabaseEntry data = new DatabaseEntry();
 				
-				if (OperationStatus.SUCCESS == db.get(t, key, data, mode)) {
-					return valueSerializer.deSerialize(data.getData());
+				if (mightContain(key) && OperationStatus.SUCCESS == db.get(t, key, data, mode)) {
+					return readValue(data);
 				}
 				else {
 					return null;
@@ -425,11 +979,11 @@ public class DbWrap<K, V> {
 		
 		public V getRequired(K keyd, Transaction t, LockMode mode){
 			try {
-				DatabaseEntry key = new DatabaseEntry(keySerializer.serialize(keyd));
+				DatabaseEntry key = scratchKey(keyd);
 				DatabaseEntry data = new DatabaseEntry();
 				
-				if (OperationStatus.SUCCESS == db.get(t, key, data, mode)) {
-					return valueSerializer.deSerialize(data.getData());
+				if (mightContain(key) && OperationStatus.SUCCESS == db.get(t, key, data, mode)) {
+					return readValue(data);
 				}
 				else {
 					throw new RuntimeException("Cannot find value for key: " + keyd);
@@ -440,6 +994,57 @@ public class DbWrap<K, V> {
 			}
 		}
 		
+		/**
+		 * Looks up all the keys with one cursor.  The result holds the keys that were
+		 * found, in key byte order.
+		 */
+		public Map<K, V> getAll(Collection<K> keys, Transaction t, LockMode mode){
+			return getAll(keys, t, mode, null);
+		}
+		
+		/**
+		 * Like {@link #getAll(Collection, Transaction, LockMode)}, but when there are
+		 * many values they are deserialized on the executor.
+		 */
+		public Map<K, V> getAll(Collection<K> keys, Transaction t, LockMode mode, ExecutorService executor){
+			MultiGet<K> lookup = new MultiGet<K>(keys, keySerializer);
+			lookup.filter(this);
+			
+			Cursor cursor = null;
+			try {
+				cursor = db.openCursor(t, null);
+				lookup.fetch(cursor, mode, t != null);
+				cursor.close();
+				cursor = null;
+			}
+			catch (Throwable ex) {
+				try {
+					if (cursor != null) {
+						cursor.close();
+					}
+				}
+				catch (Exception e) {
+					ex.printStackTrace();
+				}
+				throw new RuntimeException(ex);
+			}
+			
+			return lookup.decode(valueSerializer, executor);
+		}
+		
+		/**
+		 * Whether there is a record for the key, without reading its value.
+		 */
+		public boolean contains(K keyd, Transaction t, LockMode mode){
+			DatabaseEntry key = scratchKey(keyd);
+			if (!mightContain(key)) {
+				return false;
+			}
+			DatabaseEntry data = new DatabaseEntry();
+			data.setPartial(0, 0, true);
+			return OperationStatus.SUCCESS == db.get(t, key, data, mode);
+		}
+		
 		public <SK> JoinFormula<V> joinWith(SecondaryDbWrap<SK, V> secondary, SK position){
 			return new JoinFormula<V>(this).joinWith(secondary, position);
 		}
@@ -468,11 +1073,15 @@ public class DbWrap<K, V> {
 			}
 
 			public void put(Transaction t) {
-				db.put(t, key, value);
+				write(t, key, value, true);
+			}
+			
+			EnvironmentWrap environment() {
+				return envWrap;
 			}
 			
 			public void putNoOverwrite(Transaction t) {
-				db.putNoOverwrite(t, key, value);
+				write(t, key, value, false);
 			}
 			
 			public void putRetry() throws RetriesFailureException {
@@ -524,8 +1133,8 @@ public class DbWrap<K, V> {
 		}
 		
 		public PreSerializingPut prePut(K k, V v) {
-			DatabaseEntry key = new DatabaseEntry(keySerializer.serialize(k));
-			DatabaseEntry value = new DatabaseEntry(valueSerializer.serialize(v));
+			DatabaseEntry key = new DatabaseEntry(keyBytes(k));
+			DatabaseEntry value = new DatabaseEntry(valueBytes(v));
 			return new PreSerializingPut(key, value);
 		}
 	}
@@ -37,8 +37,10 @@
  */
 package com.moss.bdbwrap;
 
+import com.sleepycat.je.DatabaseEntry;
 
-public class EmptySerializer<T> implements Serializer<T> {
+
+public class EmptySerializer<T> implements BufferSerializer<T> {
 
 	public T deSerialize(byte[] data) {
 		return null;
@@ -47,4 +49,11 @@ public class EmptySerializer<T> implements Serializer<T> {
 	public byte[] serialize(T obj) {
 		return new byte[0];
 	}
+
+	public T deSerialize(DatabaseEntry entry) {
+		return null;
+	}
+
+	public void serialize(T obj, EntryBuffer out) {
+	}
 }
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * Glue between {@link Serializer}s and {@link DatabaseEntry}s, using the
+ * {@link BufferSerializer} paths when a serializer offers them.
+ */
+public final class Entries {
+	private Entries() {}
+	
+	/**
+	 * Serializes into the scratch buffer (when possible) and points the entry at the result.
+	 */
+	public static <T> DatabaseEntry write(Serializer<T> serializer, T obj, EntryBuffer scratch, DatabaseEntry entry) {
+		if (serializer instanceof BufferSerializer) {
+			scratch.reset();
+			((BufferSerializer<T>) serializer).serialize(obj, scratch);
+			return scratch.into(entry);
+		}
+		else {
+			entry.setData(serializer.serialize(obj));
+			return entry;
+		}
+	}
+	
+	/**
+	 * Serializes into an exactly-sized array that the caller owns.
+	 */
+	public static <T> byte[] toBytes(Serializer<T> serializer, T obj, EntryBuffer scratch) {
+		if (serializer instanceof BufferSerializer) {
+			scratch.reset();
+			((BufferSerializer<T>) serializer).serialize(obj, scratch);
+			return scratch.toByteArray();
+		}
+		else {
+			return serializer.serialize(obj);
+		}
+	}
+	
+	public static <T> T read(Serializer<T> serializer, DatabaseEntry entry) {
+		if (serializer instanceof BufferSerializer) {
+			return ((BufferSerializer<T>) serializer).deSerialize(entry);
+		}
+		else {
+			return serializer.deSerialize(bytes(entry));
+		}
+	}
+	
+	/**
+	 * The entry's bytes, copied only when the entry is a slice of a larger array.
+	 */
+	public static byte[] bytes(DatabaseEntry entry) {
+		byte[] data = entry.getData();
+		if (data == null) {
+			return null;
+		}
+		if (entry.getOffset() == 0 && entry.getSize() == data.length) {
+			return data;
+		}
+		byte[] copy = new byte[entry.getSize()];
+		System.arraycopy(data, entry.getOffset(), copy, 0, entry.getSize());
+		return copy;
+	}
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.io.OutputStream;
+
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * A growable byte buffer that {@link BufferSerializer}s write into.  The backing
+ * array is exposed so it can be handed to a {@link DatabaseEntry} without copying.
+ */
+public final class EntryBuffer extends OutputStream {
+	private static final int MAX_RETAINED = 64 * 1024;
+	
+	private byte[] data;
+	private int size;
+	
+	public EntryBuffer() {
+		this(64);
+	}
+	
+	public EntryBuffer(int capacity) {
+		data = new byte[capacity];
+	}
+	
+	public void reset() {
+		size = 0;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public int capacity() {
+		return data.length;
+	}
+	
+	/**
+	 * The backing array; only the first {@link #size()} bytes are meaningful.
+	 */
+	public byte[] data() {
+		return data;
+	}
+	
+	/**
+	 * Accounts for bytes written straight into {@link #data()} (after an
+	 * {@link #ensureCapacity(int)}).
+	 */
+	public void advance(int count) {
+		if (count < 0 || size + count > data.length) {
+			throw new IndexOutOfBoundsException("Cannot advance " + count + " bytes from " + size + " in a buffer of " + data.length);
+		}
+		size += count;
+	}
+	
+	/**
+	 * Discards everything after the first {@code size} bytes.
+	 */
+	public void truncate(int size) {
+		if (size < 0 || size > this.size) {
+			throw new IndexOutOfBoundsException("Cannot truncate a buffer of " + this.size + " bytes to " + size);
+		}
+		this.size = size;
+	}
+	
+	public void ensureCapacity(int minCapacity) {
+		if (minCapacity > data.length) {
+			int newCapacity = Math.max(data.length << 1, minCapacity);
+			byte[] grown = new byte[newCapacity];
+			System.arraycopy(data, 0, grown, 0, size);
+			data = grown;
+		}
+	}
+	
+	@Override
+	public void write(int b) {
+		ensureCapacity(size + 1);
+		data[size++] = (byte) b;
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) {
+		ensureCapacity(size + len);
+		System.arraycopy(b, off, data, size, len);
+		size += len;
+	}
+	
+	@Override
+	public void write(byte[] b) {
+		write(b, 0, b.length);
+	}
+	
+	public byte[] toByteArray() {
+		byte[] copy = new byte[size];
+		System.arraycopy(data, 0, copy, 0, size);
+		return copy;
+	}
+	
+	/**
+	 * Points the entry at this buffer's contents.  The entry is only valid until
+	 * the buffer is next written to.
+	 */
+	public DatabaseEntry into(DatabaseEntry entry) {
+		entry.setData(data, 0, size);
+		return entry;
+	}
+	
+	/**
+	 * Hands out one reset buffer per thread, replacing it whenever a large record
+	 * has grown it past what is worth keeping around.
+	 */
+	public static final class PerThread extends ThreadLocal<EntryBuffer> {
+		@Override
+		protected EntryBuffer initialValue() {
+			return new EntryBuffer();
+		}
+		
+		public EntryBuffer acquire() {
+			EntryBuffer buffer = get();
+			if (buffer.capacity() > MAX_RETAINED) {
+				buffer = new EntryBuffer();
+				set(buffer);
+			}
+			buffer.reset();
+			return buffer;
+		}
+	}
+}
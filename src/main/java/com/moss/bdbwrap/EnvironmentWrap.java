@@ -39,10 +39,13 @@ package com.moss.bdbwrap;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.WeakHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -60,6 +63,7 @@ public abstract class EnvironmentWrap {
 	public Environment env;
 	private final File envDir;
 	private final Long sharedCacheSize;
+	private final Map<Transaction, List<TransactionListener>> completionListeners = Collections.synchronizedMap(new WeakHashMap<Transaction, List<TransactionListener>>());
 	
 	public EnvironmentWrap(File envDir, Long sharedCacheSize) {
 		super();
@@ -159,6 +163,87 @@ public abstract class EnvironmentWrap {
 			throw new RuntimeException(ex);
 		}
 	}
+	
+	/**
+	 * Commits, then tells the transaction's listeners; one that throws is logged
+	 * and the rest are still told.
+	 */
+	public void commit(Transaction t){
+		List<TransactionListener> listeners = completionListeners.remove(t);
+		try {
+			t.commit();
+		}
+		catch (RuntimeException ex) {
+			fireAborted(t, listeners);
+			throw ex;
+		}
+		fireCommitted(t, listeners);
+	}
+	
+	/**
+	 * Aborts, then tells the transaction's listeners.
+	 */
+	public void abort(Transaction t){
+		List<TransactionListener> listeners = completionListeners.remove(t);
+		try {
+			t.abort();
+		}
+		finally {
+			fireAborted(t, listeners);
+		}
+	}
+	
+	private void fireCommitted(Transaction t, List<TransactionListener> listeners){
+		if (listeners != null) {
+			for (TransactionListener next : listeners) {
+				try {
+					next.committed(t);
+				}
+				catch (RuntimeException ex) {
+					log.error("Transaction listener failed", ex);
+				}
+			}
+		}
+	}
+	
+	private void fireAborted(Transaction t, List<TransactionListener> listeners){
+		if (listeners != null) {
+			for (TransactionListener next : listeners) {
+				try {
+					next.aborted(t);
+				}
+				catch (RuntimeException ex) {
+					log.error("Transaction listener failed", ex);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Has the listener told when the transaction ends; only works if it is ended
+	 * through {@link #commit(Transaction)} or {@link #abort(Transaction)}.
+	 */
+	public void onCompletion(Transaction t, TransactionListener listener){
+		synchronized (completionListeners) {
+			List<TransactionListener> listeners = completionListeners.get(t);
+			if (listeners == null) {
+				listeners = new ArrayList<TransactionListener>(2);
+				completionListeners.put(t, listeners);
+			}
+			listeners.add(listener);
+		}
+	}
+	
+	/**
+	 * Starts loading the database with its secondaries detached; see {@link BulkLoad}.
+	 */
+	public <K, V> BulkLoad<K, V> bulkLoad(DbWrap<K, V> db){
+		if (db.envWrap != this) {
+			throw new RuntimeException(db.name + " doesn't belong to this environment");
+		}
+		return new BulkLoad<K, V>(db);
+	}
+	
 	public void close() {
 		
 		boolean closeFailed = false;
@@ -169,7 +254,10 @@ public abstract class EnvironmentWrap {
 					log.debug("Closing database " + next.name);
 				}
 				for(SecondaryDbWrap<?, ?> nextSecondary: next.secondaries){
-					nextSecondary.db.close();
+					if(nextSecondary.db!=null){
+						// null while detached by an unfinished bulk load
+						nextSecondary.db.close();
+					}
 				}
 				next.db.close();
 			}
@@ -0,0 +1,281 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.moss.bdbwrap.bdbsession.WorkAtom;
+import com.sleepycat.je.Transaction;
+
+/**
+ * Writes {@link DbWrap.PreSerializingPut}s from many threads in shared
+ * transactions, so that they share one log flush.  A single writer thread takes
+ * whatever has queued up (waiting up to the max wait for more, if set) and commits
+ * it as one transaction; callers get a future that completes when their put is
+ * durable.
+ * <p>
+ * If a batch fails, its puts are retried one at a time, so one bad put only fails
+ * its own future.
+ */
+public class GroupCommitWriter {
+	private final Log log = LogFactory.getLog(getClass());
+	
+	private static final Callable<Void> NOTHING = new Callable<Void>() {
+		public Void call() {
+			return null;
+		}
+	};
+	
+	private final EnvironmentWrap env;
+	private volatile int maxBatch = 500;
+	private volatile long maxWaitMillis = 0;
+	private volatile int attempts = 3;
+	
+	private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<Pending>(4096);
+	private Thread writer;
+	private volatile boolean closed;
+	
+	public GroupCommitWriter(EnvironmentWrap env) {
+		this.env = env;
+	}
+	
+	/**
+	 * Most puts committed together.
+	 */
+	public GroupCommitWriter withMaxBatch(int maxBatch) {
+		if (maxBatch < 1) {
+			throw new IllegalArgumentException("Batch size must be positive: " + maxBatch);
+		}
+		this.maxBatch = maxBatch;
+		return this;
+	}
+	
+	/**
+	 * How long a put may wait for others to join its batch.  With the default of
+	 * zero, a batch is whatever queued while the previous one was committing.
+	 */
+	public GroupCommitWriter withMaxWait(long maxWaitMillis) {
+		this.maxWaitMillis = maxWaitMillis;
+		return this;
+	}
+	
+	/**
+	 * Tries per batch before a lock conflict is given up on.
+	 */
+	public GroupCommitWriter withAttempts(int attempts) {
+		this.attempts = attempts;
+		return this;
+	}
+	
+	/**
+	 * Queues the put, blocking if the queue is full.  Cancelling the future before
+	 * the put is taken keeps it from being written.
+	 */
+	public Future<Void> submit(DbWrap<?, ?>.PreSerializingPut put) {
+		if (put.environment() != env) {
+			throw new RuntimeException("That put is for a different environment");
+		}
+		
+		Pending pending = new Pending(put);
+		synchronized (this) {
+			if (closed) {
+				throw new RuntimeException("This writer has been closed");
+			}
+			if (writer == null) {
+				writer = new Thread("Group commit writer") {
+					@Override
+					public void run() {
+						writeLoop();
+					}
+				};
+				writer.setDaemon(true);
+				writer.start();
+			}
+			
+			// queued under the lock, so close() can't slip in between and strand it
+			try {
+				queue.put(pending);
+			}
+			catch (InterruptedException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+		return pending;
+	}
+	
+	/**
+	 * Writes what's queued and stops the writer thread.
+	 */
+	public void close() {
+		Thread thread;
+		synchronized (this) {
+			closed = true;
+			thread = writer;
+		}
+		if (thread != null) {
+			try {
+				thread.join();
+			}
+			catch (InterruptedException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+	}
+	
+	private void writeLoop() {
+		List<Pending> batch = new ArrayList<Pending>();
+		boolean interrupted = false;
+		
+		while (!closed || !queue.isEmpty()) {
+			try {
+				Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, maxBatch - batch.size());
+				
+				long deadline = System.currentTimeMillis() + maxWaitMillis;
+				while (batch.size() < maxBatch) {
+					long wait = deadline - System.currentTimeMillis();
+					Pending next = wait > 0 ? queue.poll(wait, TimeUnit.MILLISECONDS) : null;
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+					queue.drainTo(batch, maxBatch - batch.size());
+				}
+			}
+			catch (InterruptedException ex) {
+				// only close() stops the writer; what was already taken still gets written
+				log.warn("Group commit writer interrupted", ex);
+				interrupted = true;
+			}
+			
+			if (batch.isEmpty()) {
+				continue;
+			}
+			try {
+				write(batch);
+			}
+			catch (Throwable ex) {
+				log.error("Group commit writer failed", ex);
+				for (Pending next : batch) {
+					next.failed(ex);
+				}
+			}
+			finally {
+				batch.clear();
+			}
+		}
+		
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private void write(final List<Pending> batch) {
+		for (int i = batch.size() - 1; i >= 0; i--) {
+			if (batch.get(i).isCancelled()) {
+				batch.remove(i);
+			}
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+		
+		try {
+			new WorkAtom(env) {
+				@Override
+				protected void doWork(Transaction tx) throws Exception {
+					for (Pending next : batch) {
+						next.put.put(tx);
+					}
+				}
+			}.runRetry(attempts);
+		}
+		catch (RuntimeException ex) {
+			if (batch.size() == 1) {
+				batch.get(0).failed(ex);
+				return;
+			}
+			log.warn("Group commit of " + batch.size() + " puts failed, retrying them one at a time", ex);
+			for (Pending next : batch) {
+				try {
+					next.put.toAtom().runRetry(attempts);
+					next.written();
+				}
+				catch (RuntimeException e) {
+					next.failed(e);
+				}
+			}
+			return;
+		}
+		
+		for (Pending next : batch) {
+			next.written();
+		}
+	}
+	
+	private static final class Pending extends FutureTask<Void> {
+		final DbWrap<?, ?>.PreSerializingPut put;
+		
+		Pending(DbWrap<?, ?>.PreSerializingPut put) {
+			super(NOTHING);
+			this.put = put;
+		}
+		
+		void written() {
+			set(null);
+		}
+		
+		void failed(Throwable cause) {
+			setException(cause);
+		}
+	}
+}
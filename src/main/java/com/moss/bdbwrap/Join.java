@@ -42,6 +42,7 @@ package com.moss.bdbwrap;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import com.sleepycat.je.DatabaseEntry;
 import com.sleepycat.je.DatabaseException;
@@ -86,11 +87,42 @@ public class Join <V> {
 			DatabaseEntry foundData = new DatabaseEntry();
 
 			while (joinCursor.getNext(foundKey, foundData, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
-				scanner.inspect(serializer.deSerialize(foundData.getData()));
+				scanner.inspect(Entries.read(serializer, foundData));
 			}
 		} finally {
 			close();
 		}
 		
 	}
+	
+	/**
+	 * Like {@link #scan(ValueScanner)}, but values are deserialized on the executor
+	 * while the join cursor reads ahead.  The scanner is still called on this thread,
+	 * in join order if {@code ordered}, otherwise as values are ready.
+	 */
+	public void scan(final ValueScanner<V> scanner, ExecutorService executor, boolean ordered) {
+		Pipeline<V> pipeline = new Pipeline<V>(new EntryDecoder<V>() {
+			public V decode(DatabaseEntry key, DatabaseEntry data) {
+				return Entries.read(serializer, data);
+			}
+		}, executor, ordered) {
+			boolean deliver(V value) {
+				scanner.inspect(value);
+				return true;
+			}
+		};
+		
+		try {
+			DatabaseEntry foundKey = new DatabaseEntry();
+			DatabaseEntry foundData = new DatabaseEntry();
+
+			while (joinCursor.getNext(foundKey, foundData, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				pipeline.next(foundKey, foundData);
+			}
+			pipeline.finish();
+		} finally {
+			pipeline.cancel();
+			close();
+		}
+	}
 }
\ No newline at end of file
@@ -76,7 +76,7 @@ public class JoinFormula <V>{
 		for(JoinCriteria next:criteria){
 			SecondaryCursor c = next.secondary.openCursor(t);
 			cursors.add(c);
-			DatabaseEntry key = new DatabaseEntry(next.secondary.writeKey(next.position));
+			DatabaseEntry key = new DatabaseEntry(next.secondary.keyBytes(next.position));
 			DatabaseEntry foundData = new DatabaseEntry();
 			OperationStatus status = c.getSearchKey(key, foundData, mode);
 			if(status != OperationStatus.SUCCESS){
@@ -0,0 +1,228 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.moss.bdbwrap.util.BloomFilter;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.CursorConfig;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.OperationStatus;
+
+/**
+ * Keeps a bloom filter of the keys in a database.  Keys are added before they are
+ * written, so a lookup that misses the filter can skip the database.  Deletes
+ * can't be taken out of a bloom filter, so once enough of them pile up the filter
+ * is rebuilt from a key-only scan in the background.
+ */
+final class KeyFilter {
+	private final Log log = LogFactory.getLog(getClass());
+	
+	private static final long MIN_DELETES_BEFORE_REBUILD = 1024;
+	
+	private final String name;
+	private final long expectedKeys;
+	private final double falsePositiveRate;
+	
+	private volatile BloomFilter current;
+	private volatile BloomFilter next;
+	
+	/**
+	 * Held (shared) by writers from adding the key until the write is done, and
+	 * (exclusively) by a rebuild while it starts, so that every write is either in
+	 * the database by the time the scan starts or goes into the new filter too.
+	 */
+	private final ReadWriteLock writes = new ReentrantReadWriteLock();
+	private final AtomicBoolean rebuilding = new AtomicBoolean();
+	private final AtomicLong adds = new AtomicLong();
+	private final AtomicLong deletes = new AtomicLong();
+	private volatile long keysAtBuild;
+	private volatile long capacity;
+	
+	KeyFilter(String name, long expectedKeys, double falsePositiveRate) {
+		this.name = name;
+		this.expectedKeys = expectedKeys;
+		this.falsePositiveRate = falsePositiveRate;
+		this.capacity = expectedKeys;
+		this.current = BloomFilter.create(expectedKeys, falsePositiveRate);
+	}
+	
+	boolean mightContain(DatabaseEntry key) {
+		return current.mightContain(key);
+	}
+	
+	/**
+	 * Call before writing the key, and call {@link #written()} once the write is done.
+	 */
+	void writing(DatabaseEntry key) {
+		writes.readLock().lock();
+		// next before current: a rebuild swaps in the new filter before clearing next
+		BloomFilter building = next;
+		if (building != null) {
+			building.add(key);
+		}
+		current.add(key);
+	}
+	
+	void written(Database db) {
+		writes.readLock().unlock();
+		if (adds.incrementAndGet() > 2 * capacity) {
+			rebuildLater(db);
+		}
+	}
+	
+	void deleted(Database db) {
+		if (deletes.incrementAndGet() > Math.max(MIN_DELETES_BEFORE_REBUILD, keysAtBuild / 4)) {
+			rebuildLater(db);
+		}
+	}
+	
+	/**
+	 * Fills the filter from the database, in this thread.
+	 */
+	void build(Database db) {
+		rebuilding.set(true);
+		try {
+			rebuild(db, expectedKeys);
+			if (keysAtBuild > expectedKeys) {
+				// more keys than we were told to expect; size it properly
+				rebuild(db, 2 * keysAtBuild);
+			}
+		}
+		finally {
+			rebuilding.set(false);
+		}
+	}
+	
+	private void rebuildLater(final Database db) {
+		if (!rebuilding.compareAndSet(false, true)) {
+			return;
+		}
+		
+		Thread thread = new Thread("Key filter rebuild for " + name) {
+			@Override
+			public void run() {
+				try {
+					rebuild(db, Math.max(expectedKeys, 2 * (keysAtBuild + adds.get())));
+				}
+				catch (Exception ex) {
+					log.warn("Failed to rebuild the key filter for " + name + ", will try again later", ex);
+				}
+				finally {
+					rebuilding.set(false);
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	private void rebuild(Database db, long size) {
+		BloomFilter fresh = BloomFilter.create(size, falsePositiveRate);
+		long deletesBefore = deletes.get();
+		long addsBefore = adds.get();
+		
+		// don't queue for the lock: a queued writer would stall new puts, which may be
+		// holding database locks the in-flight puts are waiting on
+		while (!writes.writeLock().tryLock()) {
+			try {
+				Thread.sleep(1);
+			}
+			catch (InterruptedException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+		try {
+			next = fresh;
+		}
+		finally {
+			writes.writeLock().unlock();
+		}
+		
+		long keys = 0;
+		
+		// read committed, so we wait out uncommitted deletes rather than skip
+		// keys that may come back
+		Cursor cursor = null;
+		try {
+			cursor = db.openCursor(null, CursorConfig.READ_COMMITTED);
+			DatabaseEntry key = new DatabaseEntry();
+			DatabaseEntry data = new DatabaseEntry();
+			data.setPartial(0, 0, true);
+			
+			while (OperationStatus.SUCCESS == cursor.getNextNoDup(key, data, null)) {
+				fresh.add(key);
+				keys++;
+			}
+			
+			cursor.close();
+			cursor = null;
+		}
+		catch (RuntimeException ex) {
+			next = null;
+			try {
+				if (cursor != null) {
+					cursor.close();
+				}
+			}
+			catch (Exception e) {
+				log.error("Failed to close cursor", e);
+			}
+			throw ex;
+		}
+		
+		current = fresh;
+		next = null;
+		keysAtBuild = keys;
+		capacity = size;
+		adds.addAndGet(-addsBefore);
+		deletes.addAndGet(-deletesBefore);
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Built key filter for " + name + " from " + keys + " keys (" + fresh.bits() + " bits)");
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+/**
+ * A range of keys to scan, with optional bounds, direction and limit.  Bounds are
+ * compared by their serialized bytes, so ranges only follow the natural order of
+ * the keys when the key serializer preserves it (see the ordered package).
+ * 
+ * <pre>
+ * db.search(KeyRange.&lt;Long&gt;all().withFrom(100L, true).withTo(200L, false).withLimit(10), visitor, t);
+ * </pre>
+ */
+public final class KeyRange<K> {
+	
+	public static <K> KeyRange<K> all() {
+		return new KeyRange<K>();
+	}
+	
+	/**
+	 * Every key from this one on.
+	 */
+	public static <K> KeyRange<K> from(K from) {
+		return new KeyRange<K>().withFrom(from, true);
+	}
+	
+	/**
+	 * From one key (inclusive) to the other (exclusive).
+	 */
+	public static <K> KeyRange<K> between(K from, K to) {
+		return new KeyRange<K>().withFrom(from, true).withTo(to, false);
+	}
+	
+	private K from;
+	private boolean fromInclusive;
+	private K to;
+	private boolean toInclusive;
+	private boolean reverse;
+	private long limit = -1;
+	
+	public KeyRange<K> withFrom(K from, boolean inclusive) {
+		this.from = from;
+		this.fromInclusive = inclusive;
+		return this;
+	}
+	
+	public KeyRange<K> withTo(K to, boolean inclusive) {
+		this.to = to;
+		this.toInclusive = inclusive;
+		return this;
+	}
+	
+	/**
+	 * Visit from the upper bound down.
+	 */
+	public KeyRange<K> reversed() {
+		this.reverse = true;
+		return this;
+	}
+	
+	/**
+	 * Visit at most this many records.
+	 */
+	public KeyRange<K> withLimit(long limit) {
+		this.limit = limit;
+		return this;
+	}
+	
+	public K from() {
+		return from;
+	}
+	
+	public boolean fromInclusive() {
+		return fromInclusive;
+	}
+	
+	public K to() {
+		return to;
+	}
+	
+	public boolean toInclusive() {
+		return toInclusive;
+	}
+	
+	public boolean isReverse() {
+		return reverse;
+	}
+	
+	public long limit() {
+		return limit;
+	}
+	
+	ByteRange toBytes(Serializer<K> serializer) {
+		return new ByteRange(
+				from == null ? null : serializer.serialize(from), fromInclusive,
+				to == null ? null : serializer.serialize(to), toInclusive,
+				reverse, limit);
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.moss.bdbwrap.util.Bytes;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.CursorConfig;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.OperationStatus;
+
+/**
+ * Cuts a database's key space into ranges of roughly equal width.  Split points
+ * are interpolated between the first and last keys and then moved onto real keys,
+ * so no range is empty, though with skewed keys they won't hold equal numbers of
+ * records.
+ */
+final class KeySplitter {
+	
+	/**
+	 * Bytes past the common prefix of the first and last keys that we interpolate over.
+	 */
+	private static final int WIDTH = 8;
+	
+	private KeySplitter() {}
+	
+	/**
+	 * Up to {@code parts - 1} increasing keys to split at; each range starts at one
+	 * (inclusive) and ends at the next (exclusive).
+	 */
+	static List<byte[]> splitPoints(Database db, byte[] lower, byte[] upper, int parts) {
+		List<byte[]> points = new ArrayList<byte[]>();
+		if (parts < 2) {
+			return points;
+		}
+		
+		Cursor cursor = db.openCursor(null, CursorConfig.READ_UNCOMMITTED);
+		try {
+			DatabaseEntry key = new DatabaseEntry();
+			DatabaseEntry data = new DatabaseEntry();
+			data.setPartial(0, 0, true);
+			
+			byte[] first = lower == null ? firstKey(cursor, key, data) : lower;
+			byte[] last = upper == null ? lastKey(cursor, key, data) : upper;
+			if (first == null || last == null || Bytes.compare(first, last) >= 0) {
+				return points;
+			}
+			
+			int prefix = 0;
+			while (prefix < first.length && prefix < last.length && first[prefix] == last[prefix]) {
+				prefix++;
+			}
+			BigInteger low = window(first, prefix);
+			BigInteger span = window(last, prefix).subtract(low);
+			BigInteger count = BigInteger.valueOf(parts);
+			
+			byte[] previous = first;
+			for (int i = 1; i < parts; i++) {
+				BigInteger offset = span.multiply(BigInteger.valueOf(i)).divide(count);
+				byte[] candidate = key(first, prefix, low.add(offset));
+				
+				key.setData(candidate);
+				if (cursor.getSearchKeyRange(key, data, null) != OperationStatus.SUCCESS) {
+					break;
+				}
+				byte[] point = Entries.bytes(key);
+				if (Bytes.compare(point, last) >= 0) {
+					break;
+				}
+				if (Bytes.compare(point, previous) > 0) {
+					points.add(point);
+					previous = point;
+				}
+			}
+		}
+		finally {
+			cursor.close();
+		}
+		return points;
+	}
+	
+	private static byte[] firstKey(Cursor cursor, DatabaseEntry key, DatabaseEntry data) {
+		return cursor.getFirst(key, data, null) == OperationStatus.SUCCESS ? Entries.bytes(key) : null;
+	}
+	
+	private static byte[] lastKey(Cursor cursor, DatabaseEntry key, DatabaseEntry data) {
+		return cursor.getLast(key, data, null) == OperationStatus.SUCCESS ? Entries.bytes(key) : null;
+	}
+	
+	/**
+	 * The bytes after the prefix as an unsigned number, zero padded.
+	 */
+	private static BigInteger window(byte[] key, int prefix) {
+		byte[] bytes = new byte[WIDTH + 1];
+		for (int i = 0; i < WIDTH && prefix + i < key.length; i++) {
+			bytes[i + 1] = key[prefix + i];
+		}
+		return new BigInteger(bytes);
+	}
+	
+	private static byte[] key(byte[] template, int prefix, BigInteger window) {
+		byte[] key = new byte[prefix + WIDTH];
+		System.arraycopy(template, 0, key, 0, prefix);
+		byte[] bytes = window.toByteArray();
+		for (int i = 0; i < WIDTH && i < bytes.length; i++) {
+			key[prefix + WIDTH - 1 - i] = bytes[bytes.length - 1 - i];
+		}
+		return key;
+	}
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * A record's value as read from the database, deserialized only when (and the
+ * first time) {@link #get()} is called.  The raw bytes can be inspected first to
+ * decide whether the value is wanted at all.
+ */
+public final class LazyValue<V> {
+	private final Serializer<V> serializer;
+	private final DatabaseEntry entry;
+	private boolean decoded;
+	private V value;
+	
+	public LazyValue(Serializer<V> serializer, DatabaseEntry entry) {
+		this.serializer = serializer;
+		this.entry = entry;
+	}
+	
+	public V get() {
+		if (!decoded) {
+			value = Entries.read(serializer, entry);
+			decoded = true;
+		}
+		return value;
+	}
+	
+	public boolean isDecoded() {
+		return decoded;
+	}
+	
+	/**
+	 * The raw record; don't modify it.
+	 */
+	public DatabaseEntry entry() {
+		return entry;
+	}
+	
+	public int size() {
+		return entry.getSize();
+	}
+	
+	public byte byteAt(int index) {
+		if (index < 0 || index >= entry.getSize()) {
+			throw new IndexOutOfBoundsException("Index " + index + " in a value of " + entry.getSize() + " bytes");
+		}
+		return entry.getData()[entry.getOffset() + index];
+	}
+	
+	public boolean startsWith(byte[] prefix) {
+		if (prefix.length > entry.getSize()) {
+			return false;
+		}
+		byte[] data = entry.getData();
+		int offset = entry.getOffset();
+		for (int i = 0; i < prefix.length; i++) {
+			if (data[offset + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * A handle for the given cursor entry, which may be reused by the cursor afterwards.
+	 */
+	static <V> LazyValue<V> of(Serializer<V> serializer, DatabaseEntry data) {
+		return new LazyValue<V>(serializer, new DatabaseEntry(data.getData(), data.getOffset(), data.getSize()));
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import com.moss.bdbwrap.ordered.LongKeySerializer;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.DatabaseException;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.Transaction;
+
+/**
+ * A store keyed by 64-bit ids.  Keys are 8 big-endian bytes with the sign bit
+ * flipped (see {@link LongKeySerializer}), so they sort numerically, and the
+ * primitive overloads below never box them.
+ */
+public class LongKeyDbWrap<V> extends DbWrap<Long, V> {
+	
+	private final ThreadLocal<DatabaseEntry> keyEntries = new ThreadLocal<DatabaseEntry>() {
+		@Override
+		protected DatabaseEntry initialValue() {
+			return new DatabaseEntry(new byte[8]);
+		}
+	};
+	
+	@SuppressWarnings("unchecked") // hooks is only read, never written to or exposed
+	public LongKeyDbWrap(String name, Serializer<V> valueSerializer, EnvironmentWrap environment, PutHook<Long, V> ... hooks) {
+		super(name, new LongKeySerializer(), valueSerializer, environment, hooks);
+	}
+	
+	/**
+	 * This thread's key entry, holding the given key; only valid until the next call.
+	 */
+	DatabaseEntry keyEntry(long key) {
+		DatabaseEntry entry = keyEntries.get();
+		LongKeySerializer.writeLong(key, entry.getData(), 0);
+		return entry;
+	}
+	
+	public V get(long key, Transaction t, LockMode mode) {
+		try {
+			DatabaseEntry data = new DatabaseEntry();
+			DatabaseEntry keyEntry = keyEntry(key);
+			if (mightContain(keyEntry) && OperationStatus.SUCCESS == db.get(t, keyEntry, data, mode)) {
+				return readValue(data);
+			}
+			else {
+				return null;
+			}
+		}
+		catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	public V getRequired(long key, Transaction t, LockMode mode) {
+		V value = get(key, t, mode);
+		if (value == null) {
+			throw new RuntimeException("Cannot find value for key: " + key);
+		}
+		return value;
+	}
+	
+	public void put(long key, V value, Transaction t) {
+		if (hasHooks()) {
+			// the hooks want the boxed key (and an entry of their own)
+			put(Long.valueOf(key), value, t);
+			return;
+		}
+		try {
+			write(t, keyEntry(key), scratchValue(value), true);
+		}
+		catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	public OperationStatus putNoOverwrite(long key, V value, Transaction t) {
+		if (hasHooks()) {
+			return putNoOverwrite(Long.valueOf(key), value, t);
+		}
+		try {
+			return write(t, keyEntry(key), scratchValue(value), false);
+		}
+		catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	public void delete(long key, Transaction t) throws DatabaseException {
+		remove(t, keyEntry(key));
+	}
+	
+	/**
+	 * Visits the records with keys from {@code from} (inclusive) to {@code to}
+	 * (exclusive) in key order, until the visitor returns false.  For other bounds,
+	 * including ranges that end at {@link Long#MAX_VALUE}, see
+	 * {@link #scan(KeyRange, LongSearchVisitor, Transaction)}.
+	 */
+	public void scan(long from, long to, final LongSearchVisitor<V> visitor, Transaction t) {
+		if (from >= to) {
+			return;
+		}
+		
+		byte[] fromBytes = new byte[8];
+		byte[] toBytes = new byte[8];
+		LongKeySerializer.writeLong(from, fromBytes, 0);
+		LongKeySerializer.writeLong(to, toBytes, 0);
+		
+		scanRange(new ByteRange(fromBytes, true, toBytes, false, false, -1), t, null, new RawVisitor() {
+			public boolean next(DatabaseEntry key, DatabaseEntry data) {
+				return visitor.next(LongKeySerializer.readLong(key.getData(), key.getOffset()), readValue(data));
+			}
+		});
+	}
+	
+	/**
+	 * Visits the records in the range until the visitor returns false.
+	 */
+	public void scan(KeyRange<Long> range, final LongSearchVisitor<V> visitor, Transaction t) {
+		scanRange(range.toBytes(keySerializer), t, null, new RawVisitor() {
+			public boolean next(DatabaseEntry key, DatabaseEntry data) {
+				return visitor.next(LongKeySerializer.readLong(key.getData(), key.getOffset()), readValue(data));
+			}
+		});
+	}
+}
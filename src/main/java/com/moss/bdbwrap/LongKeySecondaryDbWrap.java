@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import com.moss.bdbwrap.ordered.LongKeySerializer;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.DatabaseException;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.SecondaryCursor;
+import com.sleepycat.je.Transaction;
+
+/**
+ * A secondary keyed by 64-bit values, encoded like {@link LongKeyDbWrap}'s keys,
+ * with lookups that don't box the key.
+ */
+public abstract class LongKeySecondaryDbWrap<V> extends SingleKeySecondaryDbWrap<Long, V> {
+	
+	private final ThreadLocal<DatabaseEntry> keyEntries = new ThreadLocal<DatabaseEntry>() {
+		@Override
+		protected DatabaseEntry initialValue() {
+			return new DatabaseEntry(new byte[8]);
+		}
+	};
+	
+	public LongKeySecondaryDbWrap(String name, DbWrap<?, V> primary) {
+		super(name, primary, new LongKeySerializer());
+	}
+	
+	DatabaseEntry keyEntry(long key) {
+		DatabaseEntry entry = keyEntries.get();
+		LongKeySerializer.writeLong(key, entry.getData(), 0);
+		return entry;
+	}
+	
+	public V get(long key, Transaction t, LockMode mode) {
+		try {
+			DatabaseEntry data = new DatabaseEntry();
+			if (OperationStatus.SUCCESS == database().get(t, keyEntry(key), data, mode)) {
+				return primary.readValue(data);
+			}
+			else {
+				return null;
+			}
+		}
+		catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	/**
+	 * Visits the records whose secondary key is from {@code from} (inclusive) to
+	 * {@code to} (exclusive), in secondary key order, until the visitor returns false.
+	 * For other bounds, including ranges that end at {@link Long#MAX_VALUE}, see
+	 * {@link #scan(KeyRange, LongSearchVisitor, Transaction)}.
+	 */
+	public void scan(long from, long to, LongSearchVisitor<V> visitor, Transaction t) throws DatabaseException {
+		if (from >= to) {
+			return;
+		}
+		
+		final SecondaryCursor cursor = database().openSecondaryCursor(t, null);
+		try {
+			DatabaseEntry key = new DatabaseEntry(new byte[8]);
+			DatabaseEntry data = new DatabaseEntry();
+			LongKeySerializer.writeLong(from, key.getData(), 0);
+			
+			for (
+					OperationStatus status = cursor.getSearchKeyRange(key, data, LockMode.DEFAULT);
+					status == OperationStatus.SUCCESS;
+					status = cursor.getNext(key, data, LockMode.DEFAULT)) {
+				long k = LongKeySerializer.readLong(key.getData(), key.getOffset());
+				if (k >= to) {
+					break;
+				}
+				if (!visitor.next(k, primary.readValue(data))) {
+					break;
+				}
+			}
+		}
+		finally {
+			cursor.close();
+		}
+	}
+	
+	/**
+	 * Visits the records whose secondary key is in the range, until the visitor
+	 * returns false.
+	 */
+	public void scan(KeyRange<Long> range, LongSearchVisitor<V> visitor, Transaction t) {
+		SecondaryCursor cursor = null;
+		try {
+			cursor = database().openSecondaryCursor(t, null);
+			RangeCursor rangeCursor = new RangeCursor(cursor, range.toBytes(keySerializer), null);
+			
+			DatabaseEntry key = new DatabaseEntry();
+			DatabaseEntry data = new DatabaseEntry();
+			while (rangeCursor.next(key, data)) {
+				if (!visitor.next(LongKeySerializer.readLong(key.getData(), key.getOffset()), primary.readValue(data))) {
+					break;
+				}
+			}
+			
+			cursor.close();
+			cursor = null;
+		}
+		catch (Throwable ex) {
+			try {
+				if (cursor != null) {
+					cursor.close();
+				}
+			}
+			catch (Exception e) {
+				ex.printStackTrace();
+			}
+			throw new RuntimeException(ex);
+		}
+	}
+}
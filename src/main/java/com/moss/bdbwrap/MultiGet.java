@@ -0,0 +1,218 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.moss.bdbwrap.util.Bytes;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+
+/**
+ * Looks up many keys with one cursor.  The keys are visited in byte order, so
+ * neighbouring keys share the same part of the tree.  Outside a transaction, when
+ * the cursor's next record is the key we want (or is already past it) we don't
+ * search at all.
+ */
+final class MultiGet<K> {
+	
+	/**
+	 * Below this many values per thread it isn't worth handing them out.
+	 */
+	private static final int MIN_PARALLEL_CHUNK = 64;
+	
+	private static final class Probe<K> implements Comparable<Probe<K>> {
+		final K key;
+		final byte[] bytes;
+		DatabaseEntry data;
+		
+		Probe(K key, byte[] bytes) {
+			this.key = key;
+			this.bytes = bytes;
+		}
+		
+		public int compareTo(Probe<K> o) {
+			return Bytes.compare(bytes, o.bytes);
+		}
+	}
+	
+	private final List<Probe<K>> probes = new ArrayList<Probe<K>>();
+	
+	MultiGet(Collection<K> keys, Serializer<K> keySerializer) {
+		for (K key : keys) {
+			probes.add(new Probe<K>(key, keySerializer.serialize(key)));
+		}
+		Collections.sort(probes);
+		
+		// drop repeats
+		for (int i = probes.size() - 1; i > 0; i--) {
+			if (probes.get(i).compareTo(probes.get(i - 1)) == 0) {
+				probes.remove(i);
+			}
+		}
+	}
+	
+	/**
+	 * Forgets the keys the database certainly doesn't have.
+	 */
+	void filter(DbWrap<?, ?> db) {
+		for (int i = probes.size() - 1; i >= 0; i--) {
+			if (!db.mightContain(new DatabaseEntry(probes.get(i).bytes))) {
+				probes.remove(i);
+			}
+		}
+	}
+	
+	/**
+	 * @param transactional whether the cursor is in a transaction, which would keep
+	 * the lock on any record it steps onto
+	 */
+	void fetch(Cursor cursor, LockMode mode, boolean transactional) {
+		// peeking locks a record nobody asked for, so it is only done where that
+		// lock is let go as the cursor moves on
+		boolean peek = !transactional && mode != LockMode.RMW;
+		DatabaseEntry keyOnly = new DatabaseEntry();
+		keyOnly.setPartial(0, 0, true);
+		
+		DatabaseEntry key = new DatabaseEntry();
+		// the value under the cursor, or null if only its key was read
+		DatabaseEntry data = null;
+		boolean positioned = false;
+		
+		for (Probe<K> probe : probes) {
+			int c = positioned ? Bytes.compare(key, probe.bytes) : -1;
+			
+			if (c < 0 && positioned && peek) {
+				data = null;
+				if (OperationStatus.SUCCESS != cursor.getNextNoDup(key, keyOnly, mode)) {
+					// nothing after this, so none of the rest are here
+					return;
+				}
+				c = Bytes.compare(key, probe.bytes);
+			}
+			
+			if (c < 0) {
+				data = new DatabaseEntry();
+				key.setData(probe.bytes);
+				if (OperationStatus.SUCCESS != cursor.getSearchKeyRange(key, data, mode)) {
+					return;
+				}
+				positioned = true;
+				c = Bytes.compare(key, probe.bytes);
+			}
+			
+			if (c == 0) {
+				if (data == null) {
+					data = new DatabaseEntry();
+					if (OperationStatus.SUCCESS != cursor.getCurrent(key, data, mode)) {
+						// deleted since the peek
+						data = null;
+						continue;
+					}
+				}
+				probe.data = data;
+			}
+		}
+	}
+	
+	/**
+	 * The values found, by key, in key byte order.
+	 */
+	<V> Map<K, V> decode(final Serializer<V> serializer, ExecutorService executor) {
+		final List<Probe<K>> found = new ArrayList<Probe<K>>(probes.size());
+		for (Probe<K> next : probes) {
+			if (next.data != null) {
+				found.add(next);
+			}
+		}
+		
+		final Object[] values = new Object[found.size()];
+		
+		if (executor == null || found.size() < 2 * MIN_PARALLEL_CHUNK) {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = Entries.read(serializer, found.get(i).data);
+			}
+		}
+		else {
+			int chunk = Math.max(MIN_PARALLEL_CHUNK, values.length / 8);
+			List<Future<?>> pending = new ArrayList<Future<?>>();
+			for (int start = 0; start < values.length; start += chunk) {
+				final int from = start;
+				final int to = Math.min(values.length, start + chunk);
+				pending.add(executor.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						for (int i = from; i < to; i++) {
+							values[i] = Entries.read(serializer, found.get(i).data);
+						}
+						return null;
+					}
+				}));
+			}
+			try {
+				for (Future<?> next : pending) {
+					next.get();
+				}
+			}
+			catch (InterruptedException ex) {
+				throw new RuntimeException(ex);
+			}
+			catch (ExecutionException ex) {
+				throw new RuntimeException(ex.getCause());
+			}
+		}
+		
+		Map<K, V> result = new LinkedHashMap<K, V>();
+		for (int i = 0; i < values.length; i++) {
+			@SuppressWarnings("unchecked")
+			V value = (V) values[i];
+			result.put(found.get(i).key, value);
+		}
+		return result;
+	}
+}
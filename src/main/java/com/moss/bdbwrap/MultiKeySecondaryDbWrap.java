@@ -59,10 +59,10 @@ public abstract class MultiKeySecondaryDbWrap<K, V> extends SecondaryDbWrap<K, V
 			public void createSecondaryKeys(SecondaryDatabase db, DatabaseEntry key, DatabaseEntry data, Set<DatabaseEntry> result)
 					throws DatabaseException {
 				
-				V value = primary.valueSerializer.deSerialize(data.getData());
+				V value = primary.readValue(data);
 				
 				for(K nextKey: createKeys(value)){
-					result.add(new DatabaseEntry(keySerializer.serialize(nextKey)));
+					result.add(new DatabaseEntry(keyBytes(nextKey)));
 				}
 				
 			}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.moss.bdbwrap.util.Bytes;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.SecondaryCursor;
+
+/**
+ * Reads a page of a {@link ByteRange} through a primary or secondary cursor.  The
+ * token names the last record of the page before: its key, and where keys can repeat,
+ * its duplicate (the data on a primary, the primary key on a secondary), so the next
+ * page starts with one {@code getSearchKeyRange} or {@code getSearchBothRange}.
+ * <p>
+ * Tokens are a flag byte (1 if a duplicate follows), the key length as four bytes,
+ * the key, then the duplicate, all in base64url.
+ */
+final class Pager {
+	private final Cursor cursor;
+	private final SecondaryCursor secondary;
+	private final ByteRange range;
+	private final boolean duplicates;
+	
+	Pager(Cursor cursor, ByteRange range, boolean duplicates) {
+		if (range.reverse || range.limit >= 0) {
+			throw new RuntimeException("Pages are read forward, and the page size is the only limit");
+		}
+		this.cursor = cursor;
+		this.secondary = cursor instanceof SecondaryCursor ? (SecondaryCursor) cursor : null;
+		this.range = range;
+		this.duplicates = duplicates;
+	}
+	
+	<T> Page<T> read(String token, int size, EntryDecoder<T> decoder) {
+		if (size < 1) {
+			throw new RuntimeException("Page size must be at least 1");
+		}
+		DatabaseEntry key = new DatabaseEntry();
+		DatabaseEntry pKey = new DatabaseEntry();
+		DatabaseEntry data = new DatabaseEntry();
+		
+		OperationStatus status = token == null ? start(key, pKey, data) : resume(token, key, pKey, data);
+		
+		List<T> items = new ArrayList<T>(size);
+		byte[] lastKey = null;
+		byte[] lastDup = null;
+		while (status == OperationStatus.SUCCESS && inRange(key)) {
+			if (items.size() == size) {
+				return new Page<T>(Collections.unmodifiableList(items), encode(lastKey, lastDup));
+			}
+			items.add(decoder.decode(key, data));
+			lastKey = Entries.bytes(key);
+			if (duplicates) {
+				lastDup = Entries.bytes(secondary != null ? pKey : data);
+			}
+			if (items.size() == size) {
+				// only looking to see if there's more
+				data.setPartial(0, 0, true);
+			}
+			status = next(key, pKey, data);
+		}
+		return new Page<T>(Collections.unmodifiableList(items), null);
+	}
+	
+	private OperationStatus start(DatabaseEntry key, DatabaseEntry pKey, DatabaseEntry data) {
+		if (range.from == null) {
+			return secondary != null ? secondary.getFirst(key, pKey, data, LockMode.DEFAULT) : cursor.getFirst(key, data, LockMode.DEFAULT);
+		}
+		return after(range.from, range.fromInclusive, key, pKey, data);
+	}
+	
+	private OperationStatus resume(String token, DatabaseEntry key, DatabaseEntry pKey, DatabaseEntry data) {
+		byte[] bytes = Bytes.fromBase64Url(token);
+		if (bytes.length < 5) {
+			throw new RuntimeException("Not a page token: " + token);
+		}
+		int keyLength = ((bytes[1] & 0xff) << 24) | ((bytes[2] & 0xff) << 16) | ((bytes[3] & 0xff) << 8) | (bytes[4] & 0xff);
+		if (keyLength < 0 || keyLength > bytes.length - 5) {
+			throw new RuntimeException("Not a page token: " + token);
+		}
+		byte[] lastKey = new byte[keyLength];
+		System.arraycopy(bytes, 5, lastKey, 0, keyLength);
+		
+		if (bytes[0] == 1 && duplicates) {
+			byte[] lastDup = new byte[bytes.length - 5 - keyLength];
+			System.arraycopy(bytes, 5 + keyLength, lastDup, 0, lastDup.length);
+			
+			key.setData(lastKey);
+			OperationStatus status;
+			DatabaseEntry dup;
+			if (secondary != null) {
+				pKey.setData(lastDup);
+				status = secondary.getSearchBothRange(key, pKey, data, LockMode.DEFAULT);
+				dup = pKey;
+			}
+			else {
+				data.setData(lastDup);
+				status = cursor.getSearchBothRange(key, data, LockMode.DEFAULT);
+				dup = data;
+			}
+			if (status == OperationStatus.SUCCESS) {
+				if (Bytes.compare(dup, lastDup) == 0) {
+					status = next(key, pKey, data);
+				}
+				return status;
+			}
+			// the key's remaining duplicates all sort before the last one; move on
+		}
+		return after(lastKey, false, key, pKey, data);
+	}
+	
+	private OperationStatus after(byte[] bound, boolean inclusive, DatabaseEntry key, DatabaseEntry pKey, DatabaseEntry data) {
+		key.setData(bound);
+		OperationStatus status = secondary != null ? secondary.getSearchKeyRange(key, pKey, data, LockMode.DEFAULT) : cursor.getSearchKeyRange(key, data, LockMode.DEFAULT);
+		if (status == OperationStatus.SUCCESS && !inclusive && Bytes.compare(key, bound) == 0) {
+			status = secondary != null ? secondary.getNextNoDup(key, pKey, data, LockMode.DEFAULT) : cursor.getNextNoDup(key, data, LockMode.DEFAULT);
+		}
+		return status;
+	}
+	
+	private OperationStatus next(DatabaseEntry key, DatabaseEntry pKey, DatabaseEntry data) {
+		return secondary != null ? secondary.getNext(key, pKey, data, LockMode.DEFAULT) : cursor.getNext(key, data, LockMode.DEFAULT);
+	}
+	
+	private boolean inRange(DatabaseEntry key) {
+		if (range.to == null) {
+			return true;
+		}
+		int c = Bytes.compare(key, range.to);
+		return c < 0 || (c == 0 && range.toInclusive);
+	}
+	
+	private static String encode(byte[] key, byte[] dup) {
+		int dupLength = dup == null ? 0 : dup.length;
+		byte[] bytes = new byte[5 + key.length + dupLength];
+		bytes[0] = (byte) (dup == null ? 0 : 1);
+		bytes[1] = (byte) (key.length >>> 24);
+		bytes[2] = (byte) (key.length >>> 16);
+		bytes[3] = (byte) (key.length >>> 8);
+		bytes[4] = (byte) key.length;
+		System.arraycopy(key, 0, bytes, 5, key.length);
+		if (dup != null) {
+			System.arraycopy(dup, 0, bytes, 5 + key.length, dupLength);
+		}
+		return Bytes.toBase64Url(bytes);
+	}
+}
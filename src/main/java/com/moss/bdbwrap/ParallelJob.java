@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a {@link ValueWorker} over a store in parts cut by key, each part a
+ * {@link ChunkedJob} of its own on the executor.  Chunks are separate transactions
+ * and are retried on their own after a lock conflict, so a conflict in one part
+ * never holds up or repeats the others.
+ * <p>
+ * The worker is called from several threads at once.  Parts are cut by key, not by
+ * record count, so with uneven keys ask for a few times as many parts as the
+ * executor has threads.
+ */
+public class ParallelJob <K, V> {
+	private final DbWrap<K, V> db;
+	private final ValueWorker<V> worker;
+	private int parts = 4 * Runtime.getRuntime().availableProcessors();
+	private int chunkSize = 1000;
+	private long chunkMillis = 1000;
+	private long pauseMillis = 0;
+	private int attempts = 3;
+	
+	private volatile List<ChunkedJob<K, V>> jobs = Collections.emptyList();
+	
+	public ParallelJob(DbWrap<K, V> db, ValueWorker<V> worker) {
+		super();
+		this.db = db;
+		this.worker = worker;
+	}
+	
+	public ParallelJob<K, V> withParts(int parts) {
+		if (parts < 1) {
+			throw new RuntimeException("Parts must be at least 1");
+		}
+		this.parts = parts;
+		return this;
+	}
+	
+	public ParallelJob<K, V> withChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+		return this;
+	}
+	
+	public ParallelJob<K, V> withChunkTime(long chunkMillis) {
+		this.chunkMillis = chunkMillis;
+		return this;
+	}
+	
+	/**
+	 * The pause each part takes between its chunks.
+	 */
+	public ParallelJob<K, V> withPause(long pauseMillis) {
+		this.pauseMillis = pauseMillis;
+		return this;
+	}
+	
+	public ParallelJob<K, V> withAttempts(int attempts) {
+		this.attempts = attempts;
+		return this;
+	}
+	
+	/**
+	 * Runs every part and waits for them.  If a part fails, the others stop after
+	 * their current chunk and the failure is thrown; what committed stays committed.
+	 * Returning normally means every part reached the end of its range.
+	 */
+	public void run(ExecutorService executor) {
+		List<ChunkedJob<K, V>> jobs = new ArrayList<ChunkedJob<K, V>>();
+		for (ByteRange range : db.split(parts)) {
+			jobs.add(new ChunkedJob<K, V>(db, worker)
+				.withRange(range)
+				.withChunkSize(chunkSize)
+				.withChunkTime(chunkMillis)
+				.withPause(pauseMillis)
+				.withAttempts(attempts));
+		}
+		this.jobs = jobs;
+		
+		List<Future<?>> results = new ArrayList<Future<?>>(jobs.size());
+		try {
+			for (final ChunkedJob<K, V> job : jobs) {
+				results.add(executor.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						job.run();
+						return null;
+					}
+				}));
+			}
+			for (Future<?> next : results) {
+				next.get();
+			}
+			for (int i = 0; i < jobs.size(); i++) {
+				// a part only ends early by failing or by being stopped, and neither happened
+				if (!jobs.get(i).isFinished()) {
+					throw new RuntimeException("Part " + (i + 1) + " of " + jobs.size() + " over '" + db.name + "' ended before its last key");
+				}
+			}
+		}
+		catch (InterruptedException ex) {
+			throw new RuntimeException(ex);
+		}
+		catch (ExecutionException ex) {
+			for (ChunkedJob<K, V> job : jobs) {
+				job.stop();
+			}
+			for (Future<?> next : results) {
+				try {
+					next.get();
+				}
+				catch (Exception e) {
+					// already failing
+				}
+			}
+			throw new RuntimeException(ex.getCause());
+		}
+		finally {
+			for (ChunkedJob<K, V> job : jobs) {
+				job.stop();
+			}
+		}
+	}
+	
+	/**
+	 * The number of parts of the current run.
+	 */
+	public int parts() {
+		return jobs.size();
+	}
+	
+	public int partsFinished() {
+		int finished = 0;
+		for (ChunkedJob<K, V> job : jobs) {
+			if (job.isFinished()) {
+				finished++;
+			}
+		}
+		return finished;
+	}
+	
+	public long visited() {
+		long visited = 0;
+		for (ChunkedJob<K, V> job : jobs) {
+			visited += job.visited();
+		}
+		return visited;
+	}
+	
+	public long updated() {
+		long updated = 0;
+		for (ChunkedJob<K, V> job : jobs) {
+			updated += job.updated();
+		}
+		return updated;
+	}
+	
+	public long deleted() {
+		long deleted = 0;
+		for (ChunkedJob<K, V> job : jobs) {
+			deleted += job.deleted();
+		}
+		return deleted;
+	}
+}
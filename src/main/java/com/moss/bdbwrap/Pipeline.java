@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * Takes records from a cursor loop, copies them into batches and decodes the batches
+ * on an executor while the cursor moves on.  Decoded records are handed to
+ * {@link #deliver(Object)} on the cursor's thread, in cursor order or as batches
+ * finish.  At most {@link #DEPTH} batches are in flight; past that, the cursor waits.
+ */
+abstract class Pipeline<T> implements RawVisitor {
+	static final int BATCH_SIZE = 256;
+	static final int DEPTH = 16;
+	
+	private final EntryDecoder<T> decoder;
+	private final boolean ordered;
+	private final ExecutorService executor;
+	/** Only for unordered delivery; in order, finished batches are taken from the front of {@link #pending}. */
+	private final CompletionService<List<T>> completion;
+	private final LinkedList<Future<List<T>>> pending = new LinkedList<Future<List<T>>>();
+	private byte[][] keys = new byte[BATCH_SIZE][];
+	private byte[][] values = new byte[BATCH_SIZE][];
+	private int size;
+	private boolean stopped;
+	
+	Pipeline(EntryDecoder<T> decoder, ExecutorService executor, boolean ordered) {
+		this.decoder = decoder;
+		this.ordered = ordered;
+		this.executor = executor;
+		this.completion = ordered ? null : new ExecutorCompletionService<List<T>>(executor);
+	}
+	
+	/**
+	 * Returns false to stop; records already decoded are dropped.
+	 */
+	abstract boolean deliver(T record);
+	
+	public boolean next(DatabaseEntry key, DatabaseEntry data) {
+		keys[size] = Entries.bytes(key);
+		values[size] = Entries.bytes(data);
+		size++;
+		if (size == BATCH_SIZE) {
+			submit();
+			drain(false);
+		}
+		return !stopped;
+	}
+	
+	/**
+	 * Delivers everything still in flight, once the cursor loop is done.
+	 */
+	void finish() {
+		if (!stopped && size > 0) {
+			submit();
+		}
+		drain(true);
+	}
+	
+	/**
+	 * Drops whatever is still in flight; call it when the cursor loop ends, however
+	 * it ends.  Batches already decoding are left to finish rather than interrupted,
+	 * since decoders may be inside JE.
+	 */
+	void cancel() {
+		for (Future<List<T>> next : pending) {
+			next.cancel(false);
+		}
+		pending.clear();
+	}
+	
+	private void submit() {
+		final byte[][] batchKeys = keys;
+		final byte[][] batchValues = values;
+		final int batchSize = size;
+		Callable<List<T>> decode = new Callable<List<T>>() {
+			public List<T> call() throws Exception {
+				List<T> decoded = new ArrayList<T>(batchSize);
+				for (int i = 0; i < batchSize; i++) {
+					decoded.add(decoder.decode(new DatabaseEntry(batchKeys[i]), new DatabaseEntry(batchValues[i])));
+				}
+				return decoded;
+			}
+		};
+		pending.add(ordered ? executor.submit(decode) : completion.submit(decode));
+		keys = new byte[BATCH_SIZE][];
+		values = new byte[BATCH_SIZE][];
+		size = 0;
+	}
+	
+	/**
+	 * Delivers finished batches, waiting for them if {@code all} or if too many are
+	 * in flight.
+	 */
+	private void drain(boolean all) {
+		try {
+			while (!stopped && !pending.isEmpty()) {
+				boolean wait = all || pending.size() >= DEPTH;
+				Future<List<T>> done;
+				if (ordered) {
+					done = wait || pending.getFirst().isDone() ? pending.removeFirst() : null;
+				}
+				else {
+					done = wait ? completion.take() : completion.poll();
+					pending.remove(done);
+				}
+				if (done == null) {
+					return;
+				}
+				for (T record : done.get()) {
+					if (!deliver(record)) {
+						stopped = true;
+						break;
+					}
+				}
+			}
+		}
+		catch (InterruptedException ex) {
+			throw new RuntimeException(ex);
+		}
+		catch (ExecutionException ex) {
+			throw new RuntimeException(ex.getCause());
+		}
+	}
+}
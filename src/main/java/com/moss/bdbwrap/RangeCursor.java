@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import com.moss.bdbwrap.util.Bytes;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+
+/**
+ * Walks a cursor over a {@link ByteRange}: positions it on the first record with
+ * a range search, then steps until a bound or the limit is reached.  Works for
+ * secondary cursors too, where the data is the primary's.
+ */
+final class RangeCursor {
+	private final Cursor cursor;
+	private final ByteRange range;
+	private final LockMode mode;
+	private final boolean distinct;
+	private boolean started;
+	private boolean done;
+	private long count;
+	
+	RangeCursor(Cursor cursor, ByteRange range, LockMode mode) {
+		this(cursor, range, mode, false);
+	}
+	
+	/**
+	 * @param distinct step over duplicates, stopping once on each key
+	 */
+	RangeCursor(Cursor cursor, ByteRange range, LockMode mode, boolean distinct) {
+		this.cursor = cursor;
+		this.range = range;
+		this.mode = mode;
+		this.distinct = distinct;
+	}
+	
+	/**
+	 * Moves to the next record in the range, reading it into the entries.
+	 */
+	boolean next(DatabaseEntry key, DatabaseEntry data) {
+		if (done) {
+			return false;
+		}
+		if (range.limit >= 0 && count >= range.limit) {
+			done = true;
+			return false;
+		}
+		
+		OperationStatus status;
+		if (!started) {
+			started = true;
+			status = range.reverse ? last(key, data) : first(key, data);
+		}
+		else if (distinct) {
+			status = range.reverse ? cursor.getPrevNoDup(key, data, mode) : cursor.getNextNoDup(key, data, mode);
+		}
+		else {
+			status = range.reverse ? cursor.getPrev(key, data, mode) : cursor.getNext(key, data, mode);
+		}
+		
+		if (status != OperationStatus.SUCCESS || !inRange(key)) {
+			done = true;
+			return false;
+		}
+		count++;
+		return true;
+	}
+	
+	private OperationStatus first(DatabaseEntry key, DatabaseEntry data) {
+		if (range.from == null) {
+			return cursor.getFirst(key, data, mode);
+		}
+		key.setData(range.from);
+		OperationStatus status = cursor.getSearchKeyRange(key, data, mode);
+		if (status == OperationStatus.SUCCESS && !range.fromInclusive && Bytes.compare(key, range.from) == 0) {
+			status = cursor.getNextNoDup(key, data, mode);
+		}
+		return status;
+	}
+	
+	private OperationStatus last(DatabaseEntry key, DatabaseEntry data) {
+		if (range.to == null) {
+			return cursor.getLast(key, data, mode);
+		}
+		key.setData(range.to);
+		OperationStatus status = cursor.getSearchKeyRange(key, data, mode);
+		if (status != OperationStatus.SUCCESS) {
+			// everything is below the bound
+			return cursor.getLast(key, data, mode);
+		}
+		if (range.toInclusive && Bytes.compare(key, range.to) == 0) {
+			// we're on the bound's first duplicate; start from its last
+			if (cursor.getNextNoDup(key, data, mode) == OperationStatus.SUCCESS) {
+				return cursor.getPrev(key, data, mode);
+			}
+			return cursor.getLast(key, data, mode);
+		}
+		return cursor.getPrev(key, data, mode);
+	}
+	
+	private boolean inRange(DatabaseEntry key) {
+		if (range.reverse) {
+			if (range.from == null) {
+				return true;
+			}
+			int c = Bytes.compare(key, range.from);
+			return c > 0 || (c == 0 && range.fromInclusive);
+		}
+		else {
+			if (range.to == null) {
+				return true;
+			}
+			int c = Bytes.compare(key, range.to);
+			return c < 0 || (c == 0 && range.toInclusive);
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.sleepycat.je.Database;
+import com.sleepycat.je.Transaction;
+
+/**
+ * A range of records that can be iterated, each time through a new cursor, or split
+ * by key into smaller ranges to be iterated on different threads.
+ */
+public final class RangeView<T> implements Iterable<T> {
+	private final Database db;
+	private final Transaction t;
+	private final ByteRange range;
+	private final EntryDecoder<T> decoder;
+	private final boolean keysOnly;
+	
+	RangeView(Database db, Transaction t, ByteRange range, EntryDecoder<T> decoder, boolean keysOnly) {
+		this.db = db;
+		this.t = t;
+		this.range = range;
+		this.decoder = decoder;
+		this.keysOnly = keysOnly;
+	}
+	
+	/**
+	 * Opens a cursor on the range; close the iterator if you don't run it to the end.
+	 */
+	public CursorIterator<T> iterator() {
+		return new CursorIterator<T>(db.openCursor(t, null), range, decoder, keysOnly);
+	}
+	
+	/**
+	 * Up to {@code parts} views that together cover this one, in its order.  A view
+	 * with a limit can't be split.
+	 */
+	public List<RangeView<T>> split(int parts) {
+		if (range.limit >= 0) {
+			return Collections.singletonList(this);
+		}
+		
+		List<RangeView<T>> views = new ArrayList<RangeView<T>>(parts);
+		byte[] from = range.from;
+		boolean fromInclusive = range.fromInclusive;
+		for (byte[] point : KeySplitter.splitPoints(db, range.from, range.to, parts)) {
+			views.add(slice(from, fromInclusive, point, false));
+			from = point;
+			fromInclusive = true;
+		}
+		views.add(slice(from, fromInclusive, range.to, range.toInclusive));
+		
+		if (range.reverse) {
+			Collections.reverse(views);
+		}
+		return views;
+	}
+	
+	private RangeView<T> slice(byte[] from, boolean fromInclusive, byte[] to, boolean toInclusive) {
+		return new RangeView<T>(db, t, new ByteRange(from, fromInclusive, to, toInclusive, range.reverse, -1), decoder, keysOnly);
+	}
+}
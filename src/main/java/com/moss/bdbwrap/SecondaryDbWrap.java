@@ -37,6 +37,10 @@
  */
 package com.moss.bdbwrap;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
 import com.sleepycat.je.CursorConfig;
 import com.sleepycat.je.DatabaseEntry;
 import com.sleepycat.je.DatabaseException;
@@ -50,9 +54,11 @@ public abstract class SecondaryDbWrap<K, V> {
 	
 	public final String name;
 	public final DbWrap<?, V> primary;
-	public SecondaryDatabase db;
+	public volatile SecondaryDatabase db;
 	protected final Serializer<K> keySerializer;
 	
+	private final EntryBuffer.PerThread keyBuffers = new EntryBuffer.PerThread();
+	
 	public SecondaryDbWrap(String name, DbWrap<?, V> primary, final Serializer<K> keySerializer) {
 		super();
 		this.name = name;
@@ -61,27 +67,38 @@ public abstract class SecondaryDbWrap<K, V> {
 		this.keySerializer = keySerializer;
 	}
 	
+	/**
+	 * The open database; fails if it's detached for a {@link BulkLoad}.
+	 */
+	SecondaryDatabase database() {
+		SecondaryDatabase database = db;
+		if (database == null) {
+			throw new RuntimeException("'" + name + "' can't be used while a bulk load of '" + primary.name + "' is in progress");
+		}
+		return database;
+	}
+	
 	public Serializer<K> keySerializer() {
 		return keySerializer;
 	}
 	
 	
 	public SecondaryCursor openCursor(Transaction t) throws DatabaseException {
-		return db.openCursor(t, null);
+		return database().openCursor(t, null);
 	}
 	
 	public SecondaryCursor openCursor(Transaction t, CursorConfig cursorConfig) throws DatabaseException {
-		return db.openCursor(t, cursorConfig);
+		return database().openCursor(t, cursorConfig);
 	}
 	
 	public V get(K keyd, Transaction t, LockMode mode){
 		
 		try {
-			DatabaseEntry key = new DatabaseEntry(keySerializer.serialize(keyd));
+			DatabaseEntry key = scratchKey(keyd);
 			DatabaseEntry data = new DatabaseEntry();
 			
-			if (OperationStatus.SUCCESS == db.get(t, key, data, mode)) {
-				return primary.valueSerializer.deSerialize(data.getData());//read(type, data);
+			if (OperationStatus.SUCCESS == database().get(t, key, data, mode)) {
+				return primary.readValue(data);
 			}
 			else {
 				return null;
@@ -92,30 +109,257 @@ public abstract class SecondaryDbWrap<K, V> {
 		}
 	}
 	
+	/**
+	 * The first value for each of the keys, looked up with one cursor; see
+	 * {@link DbWrap#getAll(Collection, Transaction, LockMode)}.
+	 */
+	public Map<K, V> getAll(Collection<K> keys, Transaction t, LockMode mode){
+		return getAll(keys, t, mode, null);
+	}
+	
+	public Map<K, V> getAll(Collection<K> keys, Transaction t, LockMode mode, ExecutorService executor){
+		MultiGet<K> lookup = new MultiGet<K>(keys, keySerializer);
+		
+		SecondaryCursor cursor = null;
+		try {
+			cursor = database().openSecondaryCursor(t, null);
+			lookup.fetch(cursor, mode, t != null);
+			cursor.close();
+			cursor = null;
+		}
+		catch (Throwable ex) {
+			try {
+				if (cursor != null) {
+					cursor.close();
+				}
+			}
+			catch (Exception e) {
+				ex.printStackTrace();
+			}
+			throw new RuntimeException(ex);
+		}
+		
+		return lookup.decode(primary.valueSerializer, executor);
+	}
+	
+	/**
+	 * The secondary keys in the range with their primary values, in secondary key
+	 * order; see {@link CursorIterator} about closing.
+	 */
+	public RangeView<KeyValue<K, V>> entries(KeyRange<K> range, Transaction t) {
+		return new RangeView<KeyValue<K, V>>(database(), t, range.toBytes(keySerializer), new EntryDecoder<KeyValue<K, V>>() {
+			public KeyValue<K, V> decode(DatabaseEntry key, DatabaseEntry data) {
+				return new KeyValue<K, V>(readKey(key), primary.readValue(data));
+			}
+		}, false);
+	}
+	
+	public RangeView<V> values(KeyRange<K> range, Transaction t) {
+		return new RangeView<V>(database(), t, range.toBytes(keySerializer), new EntryDecoder<V>() {
+			public V decode(DatabaseEntry key, DatabaseEntry data) {
+				return primary.readValue(data);
+			}
+		}, false);
+	}
+	
+	/**
+	 * Up to {@code size} entries of the range, in secondary key order, starting after
+	 * the page the token came from; see {@link DbWrap#page(KeyRange, String, int, Transaction)}.
+	 */
+	public Page<KeyValue<K, V>> page(KeyRange<K> range, String token, int size, Transaction t) {
+		SecondaryCursor cursor = null;
+		try {
+			cursor = database().openSecondaryCursor(t, null);
+			Page<KeyValue<K, V>> page = new Pager(cursor, range.toBytes(keySerializer), database().getConfig().getSortedDuplicates()).read(token, size, new EntryDecoder<KeyValue<K, V>>() {
+				public KeyValue<K, V> decode(DatabaseEntry key, DatabaseEntry data) {
+					return new KeyValue<K, V>(readKey(key), primary.readValue(data));
+				}
+			});
+			cursor.close();
+			cursor = null;
+			return page;
+		}
+		catch (Throwable ex) {
+			try {
+				if (cursor != null) {
+					cursor.close();
+				}
+			}
+			catch (Exception e) {
+				ex.printStackTrace();
+			}
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	/**
+	 * The number of primary records filed under the key.
+	 */
+	public int count(K key, Transaction t) {
+		DatabaseEntry data = new DatabaseEntry();
+		data.setPartial(0, 0, true);
+		
+		SecondaryCursor cursor = null;
+		try {
+			cursor = database().openSecondaryCursor(t, null);
+			int count = 0;
+			if (OperationStatus.SUCCESS == cursor.getSearchKey(scratchKey(key), data, LockMode.DEFAULT)) {
+				count = cursor.count();
+			}
+			cursor.close();
+			cursor = null;
+			return count;
+		}
+		catch (Throwable ex) {
+			try {
+				if (cursor != null) {
+					cursor.close();
+				}
+			}
+			catch (Exception e) {
+				ex.printStackTrace();
+			}
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	/**
+	 * Visits each distinct key in the range once, until the visitor returns false.
+	 * Primary records aren't read.
+	 */
+	public void scanKeys(KeyRange<K> range, final KeyVisitor<K> visitor, Transaction t) {
+		walkKeys(range.toBytes(keySerializer), t, new SearchVisitor<DatabaseEntry, Integer>() {
+			public boolean next(DatabaseEntry key, Integer count) {
+				return visitor.next(readKey(key));
+			}
+		});
+	}
+	
+	/**
+	 * Visits each distinct key in the range with the number of primary records filed
+	 * under it, until the visitor returns false.  Primary records aren't read.
+	 */
+	public void scanKeyCounts(KeyRange<K> range, final SearchVisitor<K, Integer> visitor, Transaction t) {
+		walkKeys(range.toBytes(keySerializer), t, new SearchVisitor<DatabaseEntry, Integer>() {
+			public boolean next(DatabaseEntry key, Integer count) {
+				return visitor.next(readKey(key), count);
+			}
+		});
+	}
+	
+	/**
+	 * The number of primary records filed under keys in the range.
+	 */
+	public long count(KeyRange<K> range, Transaction t) {
+		final long[] count = new long[1];
+		walkKeys(range.toBytes(keySerializer), t, new SearchVisitor<DatabaseEntry, Integer>() {
+			public boolean next(DatabaseEntry key, Integer duplicates) {
+				count[0] += duplicates;
+				return true;
+			}
+		});
+		return count[0];
+	}
+	
+	/**
+	 * The exact number of entries, as seen by the transaction.
+	 */
+	public long count(Transaction t) {
+		return count(KeyRange.<K>all(), t);
+	}
+	
+	/**
+	 * The number of entries, counted from the btree without taking locks; see
+	 * {@link DbWrap#countEstimate()}.
+	 */
+	public long countEstimate() {
+		try {
+			return database().count();
+		}
+		catch (DatabaseException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	/**
+	 * Walks the distinct keys of the range, handing the visitor each one with its
+	 * duplicate count.
+	 */
+	private void walkKeys(ByteRange range, Transaction t, SearchVisitor<DatabaseEntry, Integer> visitor) {
+		SecondaryCursor cursor = null;
+		try {
+			cursor = database().openSecondaryCursor(t, null);
+			RangeCursor rangeCursor = new RangeCursor(cursor, range, null, true);
+			
+			DatabaseEntry key = new DatabaseEntry();
+			DatabaseEntry data = new DatabaseEntry();
+			data.setPartial(0, 0, true);
+			
+			while (rangeCursor.next(key, data)) {
+				if (!visitor.next(key, cursor.count())) {
+					break;
+				}
+			}
+			
+			cursor.close();
+			cursor = null;
+		}
+		catch (Throwable ex) {
+			try {
+				if (cursor != null) {
+					cursor.close();
+				}
+			}
+			catch (Exception e) {
+				ex.printStackTrace();
+			}
+			throw new RuntimeException(ex);
+		}
+	}
+	
 	@Deprecated
 	public byte[] writeKey(K key){
 		return keySerializer.serialize(key);
 	}
+	
+	/**
+	 * The serialized key in this thread's key buffer; only valid until the next
+	 * scratch call on this thread.
+	 */
+	DatabaseEntry scratchKey(K key) {
+		return Entries.write(keySerializer, key, keyBuffers.acquire(), new DatabaseEntry());
+	}
+	
+	/**
+	 * The serialized key in an array of its own, as key creators must hand back.
+	 */
+	byte[] keyBytes(K key) {
+		return Entries.toBytes(keySerializer, key, keyBuffers.acquire());
+	}
+	
+	K readKey(DatabaseEntry entry) {
+		return Entries.read(keySerializer, entry);
+	}
 	public abstract void init() throws DatabaseException ;
 	
 	public void keySearchBackward(K searchKey, SearchVisitor<K, V> visitor, Transaction t) throws DatabaseException {
 		final DatabaseEntry keyEntry = new DatabaseEntry();
 		final DatabaseEntry valueEntry = new DatabaseEntry();
 		
-		final SecondaryCursor cursor = db.openSecondaryCursor(t, null);
+		final SecondaryCursor cursor = database().openSecondaryCursor(t, null);
 		
 		try {
 			boolean keepSearching = true;
 			K key;
 			V value;
 			final LockMode lockMode = LockMode.DEFAULT;
-			keyEntry.setData(keySerializer.serialize(searchKey));
+			keyEntry.setData(keyBytes(searchKey));
 			for(
 					OperationStatus status = cursor.getSearchKeyRange(keyEntry, valueEntry, lockMode);
 					keepSearching && status != OperationStatus.NOTFOUND; 
 					status = cursor.getPrev(keyEntry, valueEntry, lockMode)){
-				key = keySerializer.deSerialize(keyEntry.getData());
-				value = primary.valueSerializer.deSerialize(valueEntry.getData());
+				key = readKey(keyEntry);
+				value = primary.readValue(valueEntry);
 				keepSearching = visitor.next(key, value);
 			}
 		}finally{
@@ -127,20 +371,20 @@ public abstract class SecondaryDbWrap<K, V> {
 		final DatabaseEntry keyEntry = new DatabaseEntry();
 		final DatabaseEntry valueEntry = new DatabaseEntry();
 		
-		final SecondaryCursor cursor = db.openSecondaryCursor(t, null);
+		final SecondaryCursor cursor = database().openSecondaryCursor(t, null);
 		
 		try {
 			boolean keepSearching = true;
 			K key;
 			V value;
 			final LockMode lockMode = LockMode.DEFAULT;
-			keyEntry.setData(keySerializer.serialize(searchKey));
+			keyEntry.setData(keyBytes(searchKey));
 			for(
 					OperationStatus status = cursor.getSearchKeyRange(keyEntry, valueEntry, lockMode);
 					keepSearching && status != OperationStatus.NOTFOUND; 
 					status = cursor.getNext(keyEntry, valueEntry, lockMode)){
-				key = keySerializer.deSerialize(keyEntry.getData());
-				value = primary.valueSerializer.deSerialize(valueEntry.getData());
+				key = readKey(keyEntry);
+				value = primary.readValue(valueEntry);
 				keepSearching = visitor.next(key, value);
 			}
 		}finally{
@@ -148,6 +392,33 @@ public abstract class SecondaryDbWrap<K, V> {
 		}
 	}
 	
+	/**
+	 * Like {@link #keySearchForward(Object, SearchVisitor, Transaction)}, but values are
+	 * only deserialized when the visitor asks for them.
+	 */
+	public void keySearchForwardLazy(K searchKey, SearchVisitor<K, LazyValue<V>> visitor, Transaction t) throws DatabaseException {
+		final DatabaseEntry keyEntry = new DatabaseEntry();
+		final DatabaseEntry valueEntry = new DatabaseEntry();
+		
+		final SecondaryCursor cursor = database().openSecondaryCursor(t, null);
+		
+		try {
+			boolean keepSearching = true;
+			K key;
+			final LockMode lockMode = LockMode.DEFAULT;
+			keyEntry.setData(keyBytes(searchKey));
+			for(
+					OperationStatus status = cursor.getSearchKeyRange(keyEntry, valueEntry, lockMode);
+					keepSearching && status != OperationStatus.NOTFOUND; 
+					status = cursor.getNext(keyEntry, valueEntry, lockMode)){
+				key = readKey(keyEntry);
+				keepSearching = visitor.next(key, LazyValue.of(primary.valueSerializer, valueEntry));
+			}
+		}finally{
+			cursor.close();
+		}
+	}
+	
 	public void keySearchForwardPartial(byte[] partialSearchKey, SearchVisitor<K, V> visitor, Transaction t) throws DatabaseException {
 		keySearchForwardPartial(partialSearchKey, visitor, t, null);
 	}
@@ -156,7 +427,7 @@ public abstract class SecondaryDbWrap<K, V> {
 		final DatabaseEntry keyEntry = new DatabaseEntry(partialSearchKey);
 		final DatabaseEntry valueEntry = new DatabaseEntry();
 		
-		final SecondaryCursor cursor = db.openSecondaryCursor(t, cursorConfig);
+		final SecondaryCursor cursor = database().openSecondaryCursor(t, cursorConfig);
 		
 		try {
 			boolean keepSearching = true;
@@ -167,8 +438,8 @@ public abstract class SecondaryDbWrap<K, V> {
 					OperationStatus status = cursor.getSearchKeyRange(keyEntry, valueEntry, lockMode);
 					keepSearching && status != OperationStatus.NOTFOUND; 
 					status = cursor.getNext(keyEntry, valueEntry, lockMode)){
-				key = keySerializer.deSerialize(keyEntry.getData());
-				value = primary.valueSerializer.deSerialize(valueEntry.getData());
+				key = readKey(keyEntry);
+				value = primary.readValue(valueEntry);
 				keepSearching = visitor.next(key, value);
 			}
 		}finally{
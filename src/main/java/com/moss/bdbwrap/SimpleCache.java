@@ -40,9 +40,14 @@ package com.moss.bdbwrap;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.moss.bdbwrap.util.ReadThroughCache;
 import com.sleepycat.je.LockMode;
 import com.sleepycat.je.Transaction;
 
+/**
+ * @deprecated unbounded, not thread-safe and never invalidated; use {@link ReadThroughCache} instead
+ */
+@Deprecated
 public final class SimpleCache<K, V> {
 
 	private final Map<K, Object> cache = new HashMap<K, Object>();
@@ -60,7 +60,7 @@ public abstract class SingleKeySecondaryDbWrap<K, V> extends SecondaryDbWrap<K,
 			public boolean createSecondaryKey(SecondaryDatabase db,
 					DatabaseEntry key, DatabaseEntry data, DatabaseEntry result)
 					throws DatabaseException {
-				V value = (V) primary.valueSerializer.deSerialize(data.getData());
+				V value = primary.readValue(data);
 				
 				byte[] keyValue = createKey(value); 
 				
@@ -89,7 +89,7 @@ public abstract class SingleKeySecondaryDbWrap<K, V> extends SecondaryDbWrap<K,
 		final DatabaseEntry keyEntry = new DatabaseEntry();
 		final DatabaseEntry valueEntry = new DatabaseEntry();
 		
-		final SecondaryCursor cursor = db.openSecondaryCursor(t, null);
+		final SecondaryCursor cursor = database().openSecondaryCursor(t, null);
 		
 		try {
 			V value;
@@ -98,7 +98,7 @@ public abstract class SingleKeySecondaryDbWrap<K, V> extends SecondaryDbWrap<K,
 					OperationStatus status = cursor.getNext(keyEntry, valueEntry, lockMode);
 					status != OperationStatus.SUCCESS; 
 					status = cursor.getNext(keyEntry, valueEntry, lockMode)){
-				value = primary.valueSerializer.deSerialize(valueEntry.getData());
+				value = primary.readValue(valueEntry);
 				visitor.inspect(value);
 			}
 		}finally{
@@ -112,7 +112,7 @@ public abstract class SingleKeySecondaryDbWrap<K, V> extends SecondaryDbWrap<K,
 			return null;
 		}
 		else {
-			return writeKey(keyValue);
+			return keyBytes(keyValue);
 		}
 	}
 	
@@ -104,7 +104,7 @@ public class BdbSession <E extends EnvironmentWrap> {
 	
 	public void abort(){
 		try {
-			t.abort();
+			data.abort(t);
 		} catch (DatabaseException e) {
 			throw new RuntimeException(e);
 		}
@@ -112,7 +112,7 @@ public class BdbSession <E extends EnvironmentWrap> {
 	
 	public void commit(){
 		try {
-			t.commit();
+			data.commit(t);
 		} catch (DatabaseException e) {
 			throw new RuntimeException(e);
 		}
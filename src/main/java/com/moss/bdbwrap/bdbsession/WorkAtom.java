@@ -56,13 +56,17 @@ public abstract class WorkAtom {
 		this.e = e;
 	}
 	
+	EnvironmentWrap environment() {
+		return e;
+	}
+	
 	public final void run() {
 		Transaction tx = e.begin();
 		try{
 			doWork(tx);
-			tx.commit();
+			e.commit(tx);
 		}catch(Throwable t){
-			tx.abort();
+			e.abort(tx);
 			throw new RuntimeException(getClass().getSimpleName() + " aborted due to uncaught " + t.getClass().getSimpleName(), t);
 		}
 	}
@@ -88,7 +92,7 @@ public abstract class WorkAtom {
 				
 				doWork(tx);
 				
-				tx.commit();
+				e.commit(tx);
 				tx = null;
 
 				lockConflict = null;
@@ -96,7 +100,7 @@ public abstract class WorkAtom {
 			catch (LockConflictException ex) {
 				if (tx != null) {
 					try {
-						tx.abort();
+						e.abort(tx);
 					}
 					catch (Throwable e) {
 						log.error("Failed to abort tx", e);
@@ -107,7 +111,7 @@ public abstract class WorkAtom {
 			catch (Throwable ex) {
 				if (tx != null) {
 					try {
-						tx.abort();
+						e.abort(tx);
 					}
 					catch (Throwable e) {
 						log.error("Failed to abort tx", e);
@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.bdbsession;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.moss.bdbwrap.EnvironmentWrap;
+
+/**
+ * Runs {@link WorkAtom}s on other threads, with the usual lock conflict retries,
+ * and no more than a set number of transactions open at once.  By default there is
+ * a pool of one thread per allowed transaction; see
+ * {@link #withVirtualThreads(EnvironmentWrap, int)} for the alternative.
+ */
+public class WorkAtomExecutor {
+	
+	private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+	
+	private static Method findVirtualThreadExecutor() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		}
+		catch (NoSuchMethodException ex) {
+			return null;
+		}
+	}
+	
+	public static boolean virtualThreadsSupported() {
+		return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+	}
+	
+	private final EnvironmentWrap env;
+	private final ExecutorService executor;
+	private final Semaphore inFlight;
+	private volatile int attempts = 3;
+	
+	public WorkAtomExecutor(EnvironmentWrap env, int maxInFlight) {
+		this(env, maxInFlight, defaultExecutor(maxInFlight));
+	}
+	
+	/**
+	 * Runs the atoms on the given executor, which is shut down with this one.
+	 */
+	public WorkAtomExecutor(EnvironmentWrap env, int maxInFlight, ExecutorService executor) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("At least one transaction must be allowed: " + maxInFlight);
+		}
+		this.env = env;
+		this.executor = executor;
+		this.inFlight = new Semaphore(maxInFlight);
+	}
+	
+	/**
+	 * Runs each atom on a virtual thread of its own; only on JVMs that have them (see
+	 * {@link #virtualThreadsSupported()}).  This is rarely faster than the default pool:
+	 * every atom starts on a fresh thread, so the per-thread JAXB marshallers and
+	 * entry buffers that serializers keep are built again for each atom, and
+	 * JE's synchronized sections pin the carrier threads while they wait.
+	 */
+	public static WorkAtomExecutor withVirtualThreads(EnvironmentWrap env, int maxInFlight) {
+		if (NEW_VIRTUAL_THREAD_EXECUTOR == null) {
+			throw new RuntimeException("This JVM has no virtual threads");
+		}
+		try {
+			return new WorkAtomExecutor(env, maxInFlight, (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null));
+		}
+		catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	private static ExecutorService defaultExecutor(int maxInFlight) {
+		final AtomicInteger count = new AtomicInteger();
+		return Executors.newFixedThreadPool(maxInFlight, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "WorkAtom executor " + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * Tries per atom before a lock conflict is given up on.
+	 */
+	public WorkAtomExecutor withAttempts(int attempts) {
+		this.attempts = attempts;
+		return this;
+	}
+	
+	/**
+	 * Runs the atom with {@link WorkAtom#runRetry(int)}.  The future fails with
+	 * whatever the atom failed with.
+	 */
+	public Future<Void> submit(final WorkAtom atom) {
+		if (atom.environment() != env) {
+			throw new RuntimeException("That atom is for a different environment");
+		}
+		
+		return executor.submit(new Callable<Void>() {
+			public Void call() throws Exception {
+				inFlight.acquire();
+				try {
+					atom.runRetry(attempts);
+					return null;
+				}
+				finally {
+					inFlight.release();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Lets the submitted atoms finish, and takes no more.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+	
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+}
@@ -0,0 +1,368 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.compression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.moss.bdbwrap.BufferSerializer;
+import com.moss.bdbwrap.DbWrap;
+import com.moss.bdbwrap.Entries;
+import com.moss.bdbwrap.EntryBuffer;
+import com.moss.bdbwrap.Serializer;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.CursorConfig;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.OperationStatus;
+
+/**
+ * Wraps another serializer and deflates its output, prefixed by a header of the
+ * magic byte 0xFC (which starts neither UTF-8 text nor JDK serialization) and a
+ * format byte.  Values smaller than the threshold (or that don't shrink) are
+ * stored as-is.
+ * <p>
+ * A preset dictionary, e.g. one {@link #train(DbWrap, int, int) trained} from existing
+ * records, can be supplied; it must be kept and supplied again for as long as records
+ * written with it exist.  Several dictionaries can be registered; the last one is used
+ * for writing.
+ * <p>
+ * Records without a recognised header are passed to the wrapped serializer untouched,
+ * so stores of textual or JDK-serialized values can be switched over in place.
+ * <p>
+ * Deflaters and inflaters hold native memory; a few idle ones are kept for reuse
+ * until {@link #close()}.
+ */
+public class CompressingSerializer <T> implements BufferSerializer<T> {
+	static final int MAGIC = 0xFC;
+	static final int STORED = 0x00;
+	static final int DEFLATED = 0x01;
+	static final int DEFLATED_WITH_DICTIONARY = 0x02;
+	
+	public static final int DEFAULT_THRESHOLD = 128;
+	
+	private static final int IDLE_TOOLS = 2 * Runtime.getRuntime().availableProcessors();
+	
+	private final Serializer<T> inner;
+	private final int threshold;
+	private final int level;
+	private final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<Integer, byte[]>();
+	private volatile Preset preset;
+	
+	private final EntryBuffer.PerThread rawBuffers = new EntryBuffer.PerThread();
+	private final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<Deflater>(IDLE_TOOLS);
+	private final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<Inflater>(IDLE_TOOLS);
+	
+	public CompressingSerializer(Serializer<T> inner) {
+		this(inner, DEFAULT_THRESHOLD, Deflater.DEFAULT_COMPRESSION);
+	}
+	
+	public CompressingSerializer(Serializer<T> inner, int threshold, int level) {
+		super();
+		this.inner = inner;
+		this.threshold = threshold;
+		this.level = level;
+	}
+	
+	/**
+	 * Registers a preset dictionary and uses it for subsequent writes.
+	 */
+	public CompressingSerializer<T> withDictionary(byte[] dictionary) {
+		Preset preset = new Preset(dictionary);
+		dictionaries.put(preset.id, dictionary);
+		this.preset = preset;
+		return this;
+	}
+	
+	public byte[] dictionary() {
+		Preset preset = this.preset;
+		return preset == null ? null : preset.dictionary;
+	}
+	
+	public Serializer<T> inner() {
+		return inner;
+	}
+	
+	/**
+	 * Frees the idle deflaters and inflaters.  The serializer still works afterwards.
+	 */
+	public void close() {
+		Deflater deflater;
+		while ((deflater = deflaters.poll()) != null) {
+			deflater.end();
+		}
+		Inflater inflater;
+		while ((inflater = inflaters.poll()) != null) {
+			inflater.end();
+		}
+	}
+	
+	public byte[] serialize(T obj) {
+		EntryBuffer out = new EntryBuffer();
+		serialize(obj, out);
+		return out.toByteArray();
+	}
+	
+	public void serialize(T obj, EntryBuffer out) {
+		EntryBuffer raw = rawBuffers.acquire();
+		if (inner instanceof BufferSerializer) {
+			((BufferSerializer<T>) inner).serialize(obj, raw);
+		}
+		else {
+			raw.write(inner.serialize(obj));
+		}
+		
+		if (raw.size() < threshold || !deflate(raw, out)) {
+			out.write(MAGIC);
+			out.write(STORED);
+			out.write(raw.data(), 0, raw.size());
+		}
+	}
+	
+	private boolean deflate(EntryBuffer raw, EntryBuffer out) {
+		Preset preset = this.preset;
+		int header = preset == null ? 6 : 10;
+		int budget = raw.size() - header;
+		if (budget <= 0) {
+			return false;
+		}
+		
+		Deflater deflater = deflaters.poll();
+		if (deflater == null) {
+			deflater = new Deflater(level, true);
+		}
+		try {
+			return deflate(raw, out, deflater, preset, header, budget);
+		}
+		finally {
+			deflater.reset();
+			if (!deflaters.offer(deflater)) {
+				deflater.end();
+			}
+		}
+	}
+	
+	private boolean deflate(EntryBuffer raw, EntryBuffer out, Deflater deflater, Preset preset, int header, int budget) {
+		if (preset != null) {
+			deflater.setDictionary(preset.dictionary);
+		}
+		deflater.setInput(raw.data(), 0, raw.size());
+		deflater.finish();
+		
+		int start = out.size();
+		out.ensureCapacity(start + header + budget);
+		out.write(MAGIC);
+		if (preset == null) {
+			out.write(DEFLATED);
+		}
+		else {
+			out.write(DEFLATED_WITH_DICTIONARY);
+			writeInt(preset.id, out);
+		}
+		writeInt(raw.size(), out);
+		
+		int length = 0;
+		while (!deflater.finished() && length < budget) {
+			length += deflater.deflate(out.data(), out.size() + length, budget - length);
+		}
+		if (!deflater.finished()) {
+			out.truncate(start);
+			return false;
+		}
+		out.advance(length);
+		return true;
+	}
+	
+	public T deSerialize(byte[] data) {
+		return deSerialize(new DatabaseEntry(data));
+	}
+	
+	public T deSerialize(DatabaseEntry entry) {
+		if (entry.getData() == null) {
+			return inner.deSerialize(null);
+		}
+		return Entries.read(inner, unwrap(entry));
+	}
+	
+	/**
+	 * The wrapped serializer's bytes for a stored record.
+	 */
+	DatabaseEntry unwrap(DatabaseEntry entry) {
+		byte[] data = entry.getData();
+		int offset = entry.getOffset();
+		int size = entry.getSize();
+		if (size < 2 || (data[offset] & 0xFF) != MAGIC) {
+			// not written by us; hand the record over as it is
+			return entry;
+		}
+		
+		switch (data[offset + 1]) {
+		case STORED:
+			return new DatabaseEntry(data, offset + 2, size - 2);
+		case DEFLATED:
+			if (size >= 6 && readInt(data, offset + 2) >= 0) {
+				return new DatabaseEntry(inflate(data, offset + 6, size - 6, readInt(data, offset + 2), null));
+			}
+			break;
+		case DEFLATED_WITH_DICTIONARY:
+			if (size >= 10 && readInt(data, offset + 6) >= 0) {
+				int id = readInt(data, offset + 2);
+				byte[] dictionary = dictionaries.get(id);
+				if (dictionary == null) {
+					throw new RuntimeException("Record was compressed with dictionary " + Integer.toHexString(id) + ", which has not been registered");
+				}
+				return new DatabaseEntry(inflate(data, offset + 10, size - 10, readInt(data, offset + 6), dictionary));
+			}
+			break;
+		}
+		return entry;
+	}
+	
+	private byte[] inflate(byte[] data, int offset, int length, int rawLength, byte[] dictionary) {
+		Inflater inflater = inflaters.poll();
+		if (inflater == null) {
+			inflater = new Inflater(true);
+		}
+		try {
+			return inflate(data, offset, length, rawLength, dictionary, inflater);
+		}
+		finally {
+			inflater.reset();
+			if (!inflaters.offer(inflater)) {
+				inflater.end();
+			}
+		}
+	}
+	
+	private byte[] inflate(byte[] data, int offset, int length, int rawLength, byte[] dictionary, Inflater inflater) {
+		if (dictionary != null) {
+			inflater.setDictionary(dictionary);
+		}
+		inflater.setInput(data, offset, length);
+		byte[] raw = new byte[rawLength];
+		try {
+			int read = 0;
+			while (read < rawLength) {
+				int n = inflater.inflate(raw, read, rawLength - read);
+				if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				read += n;
+			}
+			if (read != rawLength) {
+				throw new RuntimeException("Corrupt compressed record: expected " + rawLength + " bytes, inflated " + read);
+			}
+		} catch (DataFormatException e) {
+			throw new RuntimeException("Corrupt compressed record", e);
+		}
+		return raw;
+	}
+	
+	/**
+	 * Samples up to {@code sampleCount} records of the store (which should use this
+	 * serializer for its values) and builds a dictionary of at most {@code dictionarySize}
+	 * bytes from their uncompressed form.  The dictionary is returned, not installed;
+	 * persist it somewhere and pass it to {@link #withDictionary(byte[])}.
+	 */
+	public byte[] train(DbWrap<?, T> db, int sampleCount, int dictionarySize) {
+		List<byte[]> samples = new ArrayList<byte[]>(sampleCount);
+		Random random = new Random();
+		long seen = 0;
+		
+		CursorConfig cursorConfig = new CursorConfig();
+		cursorConfig.setReadUncommitted(true);
+		Cursor cursor = db.db.openCursor(null, cursorConfig);
+		try {
+			DatabaseEntry key = new DatabaseEntry();
+			DatabaseEntry data = new DatabaseEntry();
+			while (OperationStatus.SUCCESS == cursor.getNext(key, data, null)) {
+				seen++;
+				// reservoir sampling, so the sample is spread over the whole store
+				int slot = samples.size() < sampleCount ? samples.size() : (int) (random.nextDouble() * seen);
+				if (slot < sampleCount) {
+					byte[] raw = Entries.bytes(unwrap(data));
+					if (slot == samples.size()) {
+						samples.add(raw);
+					}
+					else {
+						samples.set(slot, raw);
+					}
+				}
+			}
+		}
+		finally {
+			cursor.close();
+		}
+		
+		return DictionaryTrainer.train(samples, dictionarySize);
+	}
+	
+	private static final class Preset {
+		final byte[] dictionary;
+		final int id;
+		
+		Preset(byte[] dictionary) {
+			Adler32 adler = new Adler32();
+			adler.update(dictionary, 0, dictionary.length);
+			this.dictionary = dictionary;
+			this.id = (int) adler.getValue();
+		}
+	}
+	
+	private static void writeInt(int value, EntryBuffer out) {
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+	
+	private static int readInt(byte[] data, int offset) {
+		return ((data[offset] & 0xFF) << 24)
+				| ((data[offset + 1] & 0xFF) << 16)
+				| ((data[offset + 2] & 0xFF) << 8)
+				| (data[offset + 3] & 0xFF);
+	}
+}
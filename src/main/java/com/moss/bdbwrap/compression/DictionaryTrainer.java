@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.compression;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds a deflate preset dictionary from sample records: the segments whose
+ * 8-byte shingles recur across the most samples are kept, best ones last since
+ * deflate finds nearby matches cheapest.
+ */
+public final class DictionaryTrainer {
+	/** deflate can't reach further back than its 32K window */
+	public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+	
+	private static final int SHINGLE = 8;
+	private static final int SEGMENT = 64;
+	
+	private DictionaryTrainer() {}
+	
+	public static byte[] train(List<byte[]> samples, int dictionarySize) {
+		dictionarySize = Math.min(dictionarySize, MAX_DICTIONARY_SIZE);
+		
+		// in how many samples does each shingle occur?
+		Map<Long, Integer> frequency = new HashMap<Long, Integer>();
+		for (byte[] sample : samples) {
+			Set<Long> inSample = new HashSet<Long>();
+			for (int i = 0; i + SHINGLE <= sample.length; i++) {
+				Long shingle = shingle(sample, i);
+				if (inSample.add(shingle)) {
+					Integer count = frequency.get(shingle);
+					frequency.put(shingle, count == null ? 1 : count + 1);
+				}
+			}
+		}
+		
+		List<Segment> segments = new ArrayList<Segment>();
+		for (byte[] sample : samples) {
+			for (int start = 0; start < sample.length; start += SEGMENT / 2) {
+				int end = Math.min(sample.length, start + SEGMENT);
+				long score = 0;
+				for (int i = start; i + SHINGLE <= end; i++) {
+					int count = frequency.get(shingle(sample, i));
+					if (count > 1) {
+						score += count;
+					}
+				}
+				if (score > 0) {
+					segments.add(new Segment(sample, start, end, score));
+				}
+				if (end == sample.length) {
+					break;
+				}
+			}
+		}
+		Collections.sort(segments, new Comparator<Segment>() {
+			public int compare(Segment a, Segment b) {
+				return a.score < b.score ? 1 : a.score > b.score ? -1 : 0;
+			}
+		});
+		
+		// pick the best segments, skipping ones mostly covered already
+		List<Segment> chosen = new ArrayList<Segment>();
+		Set<Long> covered = new HashSet<Long>();
+		int size = 0;
+		for (Segment next : segments) {
+			if (size >= dictionarySize) {
+				break;
+			}
+			int shingles = 0;
+			int known = 0;
+			for (int i = next.start; i + SHINGLE <= next.end; i++) {
+				shingles++;
+				if (covered.contains(shingle(next.sample, i))) {
+					known++;
+				}
+			}
+			if (known * 2 > shingles) {
+				continue;
+			}
+			for (int i = next.start; i + SHINGLE <= next.end; i++) {
+				covered.add(shingle(next.sample, i));
+			}
+			chosen.add(next);
+			size += next.end - next.start;
+		}
+		
+		size = Math.min(size, dictionarySize);
+		byte[] dictionary = new byte[size];
+		int position = size;
+		for (Segment next : chosen) {
+			int length = Math.min(next.end - next.start, position);
+			position -= length;
+			System.arraycopy(next.sample, next.start, dictionary, position, length);
+			if (position == 0) {
+				break;
+			}
+		}
+		return dictionary;
+	}
+	
+	private static Long shingle(byte[] data, int offset) {
+		long value = 0;
+		for (int i = 0; i < SHINGLE; i++) {
+			value = (value << 8) | (data[offset + i] & 0xFF);
+		}
+		return Long.valueOf(value);
+	}
+	
+	private static final class Segment {
+		final byte[] sample;
+		final int start, end;
+		final long score;
+		
+		Segment(byte[] sample, int start, int end, long score) {
+			this.sample = sample;
+			this.start = start;
+			this.end = end;
+			this.score = score;
+		}
+	}
+}
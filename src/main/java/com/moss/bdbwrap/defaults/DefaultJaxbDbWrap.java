@@ -43,8 +43,9 @@ package com.moss.bdbwrap.defaults;
 import com.moss.bdbwrap.DbWrap;
 import com.moss.bdbwrap.EnvironmentWrap;
 import com.moss.bdbwrap.PutHook;
+import com.moss.bdbwrap.Serializer;
 import com.moss.bdbwrap.jaxb.JaxbContextProvider;
-import com.moss.bdbwrap.jaxb.JaxbSerializer;
+import com.moss.bdbwrap.jaxb.PooledJaxbSerializer;
 import com.moss.bdbwrap.tostring.FromStringFactory;
 import com.moss.bdbwrap.tostring.ReflectiveFromStringFactory;
 import com.moss.bdbwrap.tostring.ToStringSerializer;
@@ -56,7 +57,7 @@ public class DefaultJaxbDbWrap<K, V> extends DbWrap<K, V>{
 	public DefaultJaxbDbWrap(String name, Class<? extends K> keyClass, JaxbContextProvider provider, EnvironmentWrap environment, PutHook<K, V> ... hooks) {
 		super(name, 
 		new ToStringSerializer<K>(new ReflectiveFromStringFactory<K>(keyClass)), 
-		new JaxbSerializer<V>(provider),
+		new PooledJaxbSerializer<V>(provider),
 		environment,
 		hooks
 		);
@@ -66,7 +67,17 @@ public class DefaultJaxbDbWrap<K, V> extends DbWrap<K, V>{
 	public DefaultJaxbDbWrap(String name, FromStringFactory<K> keyFactory, JaxbContextProvider provider, EnvironmentWrap environment, PutHook<K, V> ... hooks) {
 		super(name, 
 		new ToStringSerializer<K>(keyFactory),
-		new JaxbSerializer<V>(provider),
+		new PooledJaxbSerializer<V>(provider),
+		environment,
+		hooks
+		);
+	}
+	
+	@SuppressWarnings("unchecked") // hooks is only read, never written to or exposed
+	public DefaultJaxbDbWrap(String name, Serializer<K> keySerializer, JaxbContextProvider provider, EnvironmentWrap environment, PutHook<K, V> ... hooks) {
+		super(name, 
+		keySerializer,
+		new PooledJaxbSerializer<V>(provider),
 		environment,
 		hooks
 		);
@@ -41,6 +41,9 @@ import java.io.Serializable;
 
 import com.moss.bdbwrap.DbWrap;
 import com.moss.bdbwrap.EnvironmentWrap;
+import com.moss.bdbwrap.Serializer;
+import com.moss.bdbwrap.jdkserial.ClassCatalogDbWrap;
+import com.moss.bdbwrap.jdkserial.CompactJdkSerialSerializer;
 import com.moss.bdbwrap.jdkserial.JdkSerialSerializer;
 import com.moss.bdbwrap.tostring.FromStringFactory;
 import com.moss.bdbwrap.tostring.ReflectiveFromStringFactory;
@@ -60,4 +63,40 @@ public class DefaultJdkSerialDbWrap <K, V extends Serializable >extends DbWrap<K
 				new JdkSerialSerializer<V>(),
 				environment);
 	}
+	@SuppressWarnings("unchecked") // the empty PutHook varargs array
+	public DefaultJdkSerialDbWrap(String name, Serializer<K> keySerializer, EnvironmentWrap environment) {
+		super(name, 
+				keySerializer, 
+				new JdkSerialSerializer<V>(),
+				environment);
+	}
+	
+	/*
+	 * The variants below store values in the compact format, keeping class
+	 * descriptors in the given catalog.  Existing full-stream records stay readable.
+	 */
+	
+	public DefaultJdkSerialDbWrap(String name, Class<K> keyClass, ClassCatalogDbWrap catalog, EnvironmentWrap environment) {
+		this(name, new ToStringSerializer<K>(new ReflectiveFromStringFactory<K>(keyClass)), catalog, environment);
+	}
+	public DefaultJdkSerialDbWrap(String name, FromStringFactory<K> keyFromStringFactory, ClassCatalogDbWrap catalog, EnvironmentWrap environment) {
+		this(name, new ToStringSerializer<K>(keyFromStringFactory), catalog, environment);
+	}
+	@SuppressWarnings("unchecked") // the empty PutHook varargs array
+	public DefaultJdkSerialDbWrap(String name, Serializer<K> keySerializer, ClassCatalogDbWrap catalog, EnvironmentWrap environment) {
+		super(name, 
+				keySerializer, 
+				DefaultJdkSerialDbWrap.<V>compactSerializer(name, catalog, environment),
+				environment);
+	}
+	
+	/**
+	 * Checked before the store registers itself with the environment.
+	 */
+	private static <V extends Serializable> CompactJdkSerialSerializer<V> compactSerializer(String name, ClassCatalogDbWrap catalog, EnvironmentWrap environment) {
+		if (catalog.envWrap != environment) {
+			throw new RuntimeException("The class catalog for '" + name + "' belongs to a different environment");
+		}
+		return new CompactJdkSerialSerializer<V>(catalog);
+	}
 }
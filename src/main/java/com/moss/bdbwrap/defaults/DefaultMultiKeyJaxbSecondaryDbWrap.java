@@ -39,6 +39,7 @@ package com.moss.bdbwrap.defaults;
 
 import com.moss.bdbwrap.DbWrap;
 import com.moss.bdbwrap.MultiKeySecondaryDbWrap;
+import com.moss.bdbwrap.Serializer;
 import com.moss.bdbwrap.tostring.FromStringFactory;
 import com.moss.bdbwrap.tostring.ReflectiveFromStringFactory;
 import com.moss.bdbwrap.tostring.ToStringSerializer;
@@ -50,6 +51,9 @@ public abstract class DefaultMultiKeyJaxbSecondaryDbWrap<K, V> extends MultiKeyS
 	public DefaultMultiKeyJaxbSecondaryDbWrap(String name, DbWrap<?, V> primary, Class<K> keyClass) {
 		super(name, primary, new ToStringSerializer<K>(new ReflectiveFromStringFactory<K>(keyClass)));
 	}
+	public DefaultMultiKeyJaxbSecondaryDbWrap(String name, DbWrap<?, V> primary, Serializer<K> keySerializer) {
+		super(name, primary, keySerializer);
+	}
 	public DefaultMultiKeyJaxbSecondaryDbWrap(String name, boolean immutable, DbWrap<?, V> primary, FromStringFactory<K> keyFactory) {
 		super(name, primary, new ToStringSerializer<K>(keyFactory));
 		withImmutableSecondaryKey(immutable);
@@ -58,5 +62,9 @@ public abstract class DefaultMultiKeyJaxbSecondaryDbWrap<K, V> extends MultiKeyS
 		super(name, primary, new ToStringSerializer<K>(new ReflectiveFromStringFactory<K>(keyClass)));
 		withImmutableSecondaryKey(immutable);
 	}
+	public DefaultMultiKeyJaxbSecondaryDbWrap(String name, boolean immutable, DbWrap<?, V> primary, Serializer<K> keySerializer) {
+		super(name, primary, keySerializer);
+		withImmutableSecondaryKey(immutable);
+	}
 	
 }
\ No newline at end of file
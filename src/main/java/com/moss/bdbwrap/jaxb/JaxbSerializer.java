@@ -42,9 +42,11 @@ import java.io.ByteArrayOutputStream;
 
 import javax.xml.bind.JAXBException;
 
-import com.moss.bdbwrap.Serializer;
+import com.moss.bdbwrap.BufferSerializer;
+import com.moss.bdbwrap.EntryBuffer;
+import com.sleepycat.je.DatabaseEntry;
 
-public class JaxbSerializer <T> implements Serializer<T> {
+public class JaxbSerializer <T> implements BufferSerializer<T> {
 	private final JaxbContextProvider provider;
 	
 	public JaxbSerializer(JaxbContextProvider provider) {
@@ -69,4 +71,21 @@ public class JaxbSerializer <T> implements Serializer<T> {
 			throw new RuntimeException(e);
 		}
 	};
+	
+	@SuppressWarnings("unchecked")
+	public T deSerialize(DatabaseEntry entry) {
+		try {
+			return (T) provider.context().createUnmarshaller().unmarshal(new ByteArrayInputStream(entry.getData(), entry.getOffset(), entry.getSize()));
+		} catch (JAXBException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	public void serialize(T obj, EntryBuffer out) {
+		try {
+			provider.context().createMarshaller().marshal(obj, out);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
 }
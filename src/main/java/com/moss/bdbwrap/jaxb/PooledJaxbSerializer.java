@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.jaxb;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import com.moss.bdbwrap.BufferSerializer;
+import com.moss.bdbwrap.EntryBuffer;
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * Like {@link JaxbSerializer}, but keeps a {@link Marshaller}, an {@link Unmarshaller}
+ * and an output buffer per thread rather than creating them for every record.
+ * The tools are re-created whenever the provider hands out a different context.
+ */
+public class PooledJaxbSerializer <T> implements BufferSerializer<T> {
+	private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+	
+	private final JaxbContextProvider provider;
+	private final ThreadLocal<Tools> tools = new ThreadLocal<Tools>();
+	
+	public PooledJaxbSerializer(JaxbContextProvider provider) {
+		super();
+		this.provider = provider;
+	}
+	
+	public T deSerialize(byte[] data) {
+		return read(new ByteArrayInputStream(data));
+	}
+	
+	public T deSerialize(DatabaseEntry entry) {
+		return read(new ByteArrayInputStream(entry.getData(), entry.getOffset(), entry.getSize()));
+	}
+	
+	public byte[] serialize(T obj) {
+		Tools t = checkout();
+		try {
+			t.buffer.reset();
+			t.marshaller.marshal(obj, t.buffer);
+			byte[] data = t.buffer.toByteArray();
+			checkin(t);
+			return data;
+		} catch (Exception e) {
+			discard(t);
+			throw new RuntimeException(e);
+		}
+	}
+	
+	public void serialize(T obj, EntryBuffer out) {
+		Tools t = checkout();
+		try {
+			t.marshaller.marshal(obj, out);
+			checkin(t);
+		} catch (Exception e) {
+			discard(t);
+			throw new RuntimeException(e);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private T read(InputStream in) {
+		Tools t = checkout();
+		try {
+			T value = (T) t.unmarshaller.unmarshal(in);
+			checkin(t);
+			return value;
+		} catch (Exception e) {
+			discard(t);
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private Tools checkout() {
+		try {
+			JAXBContext context = provider.context();
+			Tools t = tools.get();
+			if (t == null || t.context != context) {
+				t = new Tools(context);
+				tools.set(t);
+			}
+			else if (t.inUse) {
+				// re-entrant call (e.g. from an XmlAdapter); don't disturb the pooled instance
+				return new Tools(context);
+			}
+			t.inUse = true;
+			return t;
+		} catch (JAXBException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private void checkin(Tools t) {
+		t.inUse = false;
+		if (t.buffer.capacity() > MAX_RETAINED_BUFFER) {
+			t.buffer = new EntryBuffer();
+		}
+	}
+	
+	private void discard(Tools t) {
+		if (tools.get() == t) {
+			tools.remove();
+		}
+	}
+	
+	private static final class Tools {
+		final JAXBContext context;
+		final Marshaller marshaller;
+		final Unmarshaller unmarshaller;
+		EntryBuffer buffer = new EntryBuffer();
+		boolean inUse;
+		
+		Tools(JAXBContext context) throws JAXBException {
+			this.context = context;
+			this.marshaller = context.createMarshaller();
+			this.unmarshaller = context.createUnmarshaller();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.jdkserial;
+
+import java.io.ByteArrayInputStream;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+
+import com.moss.bdbwrap.BufferSerializer;
+import com.moss.bdbwrap.EntryBuffer;
+import com.sleepycat.bind.serial.SerialBinding;
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * JDK serialization without the per-record stream header and class descriptors:
+ * those are kept once in a {@link ClassCatalogDbWrap} and each record carries only
+ * a small class id.  Records written by {@link JdkSerialSerializer} (which start with
+ * the JDK stream magic) are still read.
+ */
+public class CompactJdkSerialSerializer <V extends Serializable> implements BufferSerializer<V> {
+	private static final byte STREAM_MAGIC_0 = (byte) 0xAC;
+	private static final byte STREAM_MAGIC_1 = (byte) 0xED;
+	
+	private final ClassCatalogDbWrap catalog;
+	private SerialBinding<V> binding;
+	
+	public CompactJdkSerialSerializer(ClassCatalogDbWrap catalog) {
+		super();
+		this.catalog = catalog;
+	}
+	
+	public ClassCatalogDbWrap catalog() {
+		return catalog;
+	}
+	
+	private synchronized SerialBinding<V> binding() {
+		if (binding == null) {
+			binding = new SerialBinding<V>(catalog.catalog(), null);
+		}
+		return binding;
+	}
+	
+	public byte[] serialize(V o) {
+		EntryBuffer out = new EntryBuffer();
+		serialize(o, out);
+		return out.toByteArray();
+	}
+	
+	public void serialize(V o, EntryBuffer out) {
+		DatabaseEntry entry = new DatabaseEntry();
+		binding().objectToEntry(o, entry);
+		out.write(entry.getData(), entry.getOffset(), entry.getSize());
+	}
+	
+	public V deSerialize(byte[] bytes) {
+		return deSerialize(new DatabaseEntry(bytes));
+	}
+	
+	@SuppressWarnings("unchecked")
+	public V deSerialize(DatabaseEntry entry) {
+		byte[] data = entry.getData();
+		int offset = entry.getOffset();
+		if (entry.getSize() >= 2 && data[offset] == STREAM_MAGIC_0 && data[offset + 1] == STREAM_MAGIC_1) {
+			try {
+				ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data, offset, entry.getSize()));
+				return (V) in.readObject();
+			}
+			catch (Exception ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+		return binding().entryToObject(entry);
+	}
+}
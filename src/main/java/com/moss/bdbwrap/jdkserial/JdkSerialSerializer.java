@@ -43,9 +43,11 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
-import com.moss.bdbwrap.Serializer;
+import com.moss.bdbwrap.BufferSerializer;
+import com.moss.bdbwrap.EntryBuffer;
+import com.sleepycat.je.DatabaseEntry;
 
-public class JdkSerialSerializer <V extends Serializable> implements Serializer<V>{
+public class JdkSerialSerializer <V extends Serializable> implements BufferSerializer<V>{
 	
 	public byte[] serialize(V o) {
 		try {
@@ -69,4 +71,27 @@ public class JdkSerialSerializer <V extends Serializable> implements Serializer<
 			throw new RuntimeException(ex);
 		}
 	}
+	
+	public void serialize(V o, EntryBuffer out) {
+		try {
+			ObjectOutputStream oout = new ObjectOutputStream(out);
+			oout.writeObject(o);
+			oout.flush();
+		}
+		catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	public V deSerialize(DatabaseEntry entry) {
+		try {
+			ByteArrayInputStream in = new ByteArrayInputStream(entry.getData(), entry.getOffset(), entry.getSize());
+			ObjectInputStream ooin = new ObjectInputStream(in);
+			return (V)ooin.readObject();
+		}
+		catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
 }
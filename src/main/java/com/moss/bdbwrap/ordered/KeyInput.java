@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.ordered;
+
+/**
+ * Reads the components of an ordered key back out of a byte slice.
+ */
+public final class KeyInput {
+	private final byte[] data;
+	private final int limit;
+	private int position;
+	
+	public KeyInput(byte[] data, int offset, int length) {
+		this.data = data;
+		this.position = offset;
+		this.limit = offset + length;
+	}
+	
+	public boolean hasRemaining() {
+		return position < limit;
+	}
+	
+	public int readUnsignedByte() {
+		if (position >= limit) {
+			throw new RuntimeException("Unexpected end of key");
+		}
+		return data[position++] & 0xFF;
+	}
+	
+	public int readInt() {
+		require(4);
+		int value = ((data[position] & 0xFF) << 24)
+				| ((data[position + 1] & 0xFF) << 16)
+				| ((data[position + 2] & 0xFF) << 8)
+				| (data[position + 3] & 0xFF);
+		position += 4;
+		return value;
+	}
+	
+	public long readLong() {
+		require(8);
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (data[position + i] & 0xFF);
+		}
+		position += 8;
+		return value;
+	}
+	
+	private void require(int count) {
+		if (limit - position < count) {
+			throw new RuntimeException("Unexpected end of key: needed " + count + " bytes, have " + (limit - position));
+		}
+	}
+}
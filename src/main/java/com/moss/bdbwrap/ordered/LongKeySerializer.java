@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.ordered;
+
+import com.moss.bdbwrap.EntryBuffer;
+
+/**
+ * Signed longs as 8 big-endian bytes with the sign bit flipped, so negative
+ * values sort before positive ones.
+ */
+public class LongKeySerializer extends OrderedKeySerializer<Long> {
+	
+	public static void writeLong(long value, EntryBuffer out) {
+		OrderedKeySerializer.writeLong(value ^ Long.MIN_VALUE, out);
+	}
+	
+	public static long readLong(KeyInput in) {
+		return in.readLong() ^ Long.MIN_VALUE;
+	}
+	
+	public static void writeLong(long value, byte[] data, int offset) {
+		long flipped = value ^ Long.MIN_VALUE;
+		for (int i = 7; i >= 0; i--) {
+			data[offset + i] = (byte) flipped;
+			flipped >>>= 8;
+		}
+	}
+	
+	public static long readLong(byte[] data, int offset) {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (data[offset + i] & 0xFF);
+		}
+		return value ^ Long.MIN_VALUE;
+	}
+	
+	@Override
+	public void write(Long value, EntryBuffer out) {
+		writeLong(value.longValue(), out);
+	}
+	
+	@Override
+	public Long read(KeyInput in) {
+		return Long.valueOf(readLong(in));
+	}
+}
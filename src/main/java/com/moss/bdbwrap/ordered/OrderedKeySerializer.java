@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.ordered;
+
+import com.moss.bdbwrap.BufferSerializer;
+import com.moss.bdbwrap.EntryBuffer;
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * Base for binary key serializers whose output sorts, byte for byte, in the
+ * natural order of the values.  Components can be chained in a {@link TupleKeySerializer}.
+ */
+public abstract class OrderedKeySerializer<T> implements BufferSerializer<T> {
+	
+	public abstract void write(T value, EntryBuffer out);
+	
+	public abstract T read(KeyInput in);
+	
+	public void serialize(T obj, EntryBuffer out) {
+		if (obj == null) {
+			throw new NullPointerException(getClass().getSimpleName() + " does not support null keys");
+		}
+		write(obj, out);
+	}
+	
+	public byte[] serialize(T obj) {
+		EntryBuffer out = new EntryBuffer(16);
+		serialize(obj, out);
+		return out.toByteArray();
+	}
+	
+	public T deSerialize(byte[] data) {
+		if (data == null) return null;
+		return read(new KeyInput(data, 0, data.length));
+	}
+	
+	public T deSerialize(DatabaseEntry entry) {
+		if (entry.getData() == null) return null;
+		return read(new KeyInput(entry.getData(), entry.getOffset(), entry.getSize()));
+	}
+	
+	static void writeInt(int value, EntryBuffer out) {
+		out.ensureCapacity(out.size() + 4);
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+	
+	static void writeLong(long value, EntryBuffer out) {
+		out.ensureCapacity(out.size() + 8);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			out.write((int) (value >>> shift));
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.ordered;
+
+import java.io.UnsupportedEncodingException;
+
+import com.moss.bdbwrap.EntryBuffer;
+
+/**
+ * UTF-8 strings, terminated so that they can sit in the middle of a
+ * {@link TupleKeySerializer} and still sort correctly: a zero byte in the text
+ * is escaped as 0x00 0xFF and the string ends with 0x00 0x01, which sorts
+ * below any continuation.
+ */
+public class StringKeySerializer extends OrderedKeySerializer<String> {
+	
+	@Override
+	public void write(String value, EntryBuffer out) {
+		byte[] utf8;
+		try {
+			utf8 = value.getBytes("UTF8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+		out.ensureCapacity(out.size() + utf8.length + 2);
+		for (int i = 0; i < utf8.length; i++) {
+			out.write(utf8[i]);
+			if (utf8[i] == 0) {
+				out.write(0xFF);
+			}
+		}
+		out.write(0x00);
+		out.write(0x01);
+	}
+	
+	@Override
+	public String read(KeyInput in) {
+		EntryBuffer text = new EntryBuffer(32);
+		while (true) {
+			int b = in.readUnsignedByte();
+			if (b == 0) {
+				int marker = in.readUnsignedByte();
+				if (marker == 0x01) {
+					break;
+				}
+				else if (marker != 0xFF) {
+					throw new RuntimeException("Corrupt string key component (bad escape 0x" + Integer.toHexString(marker) + ")");
+				}
+			}
+			text.write(b);
+		}
+		try {
+			return new String(text.data(), 0, text.size(), "UTF8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
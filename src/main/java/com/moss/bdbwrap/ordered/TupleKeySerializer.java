@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.ordered;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.moss.bdbwrap.EntryBuffer;
+
+/**
+ * Composite keys made of several ordered components, which sort by the first
+ * component, then the second, and so on.  A key may omit trailing components,
+ * which is handy as a search prefix for range scans.
+ */
+public class TupleKeySerializer extends OrderedKeySerializer<List<Object>> {
+	private final List<OrderedKeySerializer<?>> components;
+	
+	public TupleKeySerializer(OrderedKeySerializer<?> ... components) {
+		if (components.length == 0) {
+			throw new RuntimeException("A tuple key needs at least one component");
+		}
+		this.components = new ArrayList<OrderedKeySerializer<?>>(Arrays.asList(components));
+	}
+	
+	public List<OrderedKeySerializer<?>> components() {
+		return new ArrayList<OrderedKeySerializer<?>>(components);
+	}
+	
+	@Override
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void write(List<Object> value, EntryBuffer out) {
+		if (value.size() > components.size()) {
+			throw new RuntimeException("Tuple has " + value.size() + " values but the key only has " + components.size() + " components");
+		}
+		for (int i = 0; i < value.size(); i++) {
+			Object next = value.get(i);
+			if (next == null) {
+				throw new NullPointerException("Tuple component " + i + " is null");
+			}
+			((OrderedKeySerializer) components.get(i)).write(next, out);
+		}
+	}
+	
+	@Override
+	public List<Object> read(KeyInput in) {
+		List<Object> values = new ArrayList<Object>(components.size());
+		for (int i = 0; i < components.size() && in.hasRemaining(); i++) {
+			values.add(components.get(i).read(in));
+		}
+		return values;
+	}
+}
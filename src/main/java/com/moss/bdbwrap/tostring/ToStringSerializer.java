@@ -39,12 +39,15 @@ package com.moss.bdbwrap.tostring;
 
 import java.io.UnsupportedEncodingException;
 
-import com.moss.bdbwrap.Serializer;
+import com.moss.bdbwrap.BufferSerializer;
+import com.moss.bdbwrap.EntryBuffer;
+import com.sleepycat.je.DatabaseEntry;
 
-public class ToStringSerializer <T> implements Serializer<T> {
+public class ToStringSerializer <T> implements BufferSerializer<T> {
 	private static final String NULL_KEY_VALUE = "null";
 	
 	private final String encoding;
+	private final boolean asciiCompatible;
 	private final FromStringFactory<T> factory;
 	
 	public ToStringSerializer(final FromStringFactory<T> factory) {
@@ -54,6 +57,9 @@ public class ToStringSerializer <T> implements Serializer<T> {
 	public ToStringSerializer(final FromStringFactory<T> factory, final String encoding) {
 		super();
 		this.encoding = encoding;
+		this.asciiCompatible = encoding.replace("-", "").equalsIgnoreCase("UTF8")
+				|| encoding.equalsIgnoreCase("US-ASCII")
+				|| encoding.equalsIgnoreCase("ISO-8859-1");
 		this.factory = factory;
 	}
 
@@ -81,4 +87,46 @@ public class ToStringSerializer <T> implements Serializer<T> {
 			throw new RuntimeException(e);
 		}
 	};
+	
+	public T deSerialize(DatabaseEntry entry) {
+		try {
+			if(entry.getData()==null) return null;
+			else {
+				String text = new String(entry.getData(), entry.getOffset(), entry.getSize(), encoding);
+				if(text.equals(NULL_KEY_VALUE)){
+					return null;
+				}else{
+					return factory.fromString(text);
+				}
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	public void serialize(T obj, EntryBuffer out) {
+		String text = obj==null ? NULL_KEY_VALUE : obj.toString();
+		if (asciiCompatible && isAscii(text)) {
+			out.ensureCapacity(out.size() + text.length());
+			for (int i = 0; i < text.length(); i++) {
+				out.write(text.charAt(i));
+			}
+		}
+		else {
+			try {
+				out.write(text.getBytes(encoding));
+			} catch (UnsupportedEncodingException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+	
+	private static boolean isAscii(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) >= 0x80) {
+				return false;
+			}
+		}
+		return true;
+	}
 }
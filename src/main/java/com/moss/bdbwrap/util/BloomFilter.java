@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * A thread-safe bloom filter over byte strings.  Bits are only ever set, so
+ * concurrent adds and lookups need no locking.
+ */
+public final class BloomFilter {
+	
+	/**
+	 * Sized for the given number of keys at the given false positive rate.
+	 */
+	public static BloomFilter create(long expectedKeys, double falsePositiveRate){
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+		}
+		long n = Math.max(1, expectedKeys);
+		double ln2 = Math.log(2);
+		long bits = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (ln2 * ln2));
+		int hashes = (int) Math.max(1, Math.round((double) bits / n * ln2));
+		return new BloomFilter(bits, hashes);
+	}
+	
+	private final AtomicLongArray words;
+	private final long bits;
+	private final int hashes;
+	
+	public BloomFilter(long bits, int hashes) {
+		long wordCount = (Math.max(64, bits) + 63) / 64;
+		if (wordCount > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many bits: " + bits);
+		}
+		this.words = new AtomicLongArray((int) wordCount);
+		this.bits = wordCount * 64;
+		this.hashes = hashes;
+	}
+	
+	public void add(DatabaseEntry entry){
+		add(entry.getData(), entry.getOffset(), entry.getSize());
+	}
+	
+	public boolean mightContain(DatabaseEntry entry){
+		return mightContain(entry.getData(), entry.getOffset(), entry.getSize());
+	}
+	
+	public void add(byte[] data, int offset, int length){
+		long h = hash(data, offset, length);
+		long h1 = h, h2 = (h >>> 32) | 1;
+		for (int i = 0; i < hashes; i++) {
+			long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			long old;
+			do {
+				old = words.get(word);
+				if ((old & mask) != 0) {
+					break;
+				}
+			}
+			while (!words.compareAndSet(word, old, old | mask));
+		}
+	}
+	
+	public boolean mightContain(byte[] data, int offset, int length){
+		long h = hash(data, offset, length);
+		long h1 = h, h2 = (h >>> 32) | 1;
+		for (int i = 0; i < hashes; i++) {
+			long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+			if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	public long bits(){
+		return bits;
+	}
+	
+	public int hashes(){
+		return hashes;
+	}
+	
+	/**
+	 * 64-bit FNV-1a, finished with the MurmurHash3 mixer so the high bits are
+	 * usable as a second hash.
+	 */
+	private static long hash(byte[] data, int offset, int length){
+		long h = 0xcbf29ce484222325L;
+		for (int i = offset, end = offset + length; i < end; i++) {
+			h ^= data[i] & 0xff;
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.util;
+
+import java.util.Comparator;
+
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * Byte string helpers.  Comparisons are unsigned and lexicographic, which is the
+ * order JE keeps keys in by default.
+ */
+public final class Bytes {
+	
+	public static final Comparator<byte[]> COMPARATOR = new Comparator<byte[]>() {
+		public int compare(byte[] a, byte[] b) {
+			return Bytes.compare(a, b);
+		}
+	};
+	
+	private static final char[] BASE64URL = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+	
+	private Bytes() {}
+	
+	public static int compare(byte[] a, byte[] b){
+		return compare(a, 0, a.length, b, 0, b.length);
+	}
+	
+	public static int compare(DatabaseEntry a, byte[] b){
+		return compare(a.getData(), a.getOffset(), a.getSize(), b, 0, b.length);
+	}
+	
+	public static int compare(byte[] a, int aOffset, int aLength, byte[] b, int bOffset, int bLength){
+		int length = Math.min(aLength, bLength);
+		for (int i = 0; i < length; i++) {
+			int x = a[aOffset + i] & 0xff;
+			int y = b[bOffset + i] & 0xff;
+			if (x != y) {
+				return x - y;
+			}
+		}
+		return aLength - bLength;
+	}
+	
+	/**
+	 * URL-safe base64 (RFC 4648, section 5), without padding.
+	 */
+	public static String toBase64Url(byte[] bytes){
+		StringBuilder out = new StringBuilder((bytes.length * 4 + 2) / 3);
+		for (int i = 0; i < bytes.length; i += 3) {
+			int n = (bytes[i] & 0xff) << 16;
+			if (i + 1 < bytes.length) {
+				n |= (bytes[i + 1] & 0xff) << 8;
+			}
+			if (i + 2 < bytes.length) {
+				n |= bytes[i + 2] & 0xff;
+			}
+			int chars = Math.min(bytes.length - i, 3) + 1;
+			for (int j = 0; j < chars; j++) {
+				out.append(BASE64URL[(n >>> (18 - 6 * j)) & 0x3f]);
+			}
+		}
+		return out.toString();
+	}
+	
+	public static byte[] fromBase64Url(String text){
+		if (text.length() % 4 == 1) {
+			throw new RuntimeException("Not base64url: " + text);
+		}
+		byte[] out = new byte[text.length() * 3 / 4];
+		int n = 0;
+		int bits = 0;
+		int o = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			int v;
+			if (c >= 'A' && c <= 'Z') {
+				v = c - 'A';
+			}
+			else if (c >= 'a' && c <= 'z') {
+				v = c - 'a' + 26;
+			}
+			else if (c >= '0' && c <= '9') {
+				v = c - '0' + 52;
+			}
+			else if (c == '-') {
+				v = 62;
+			}
+			else if (c == '_') {
+				v = 63;
+			}
+			else {
+				throw new RuntimeException("Not base64url: " + text);
+			}
+			n = (n << 6) | v;
+			bits += 6;
+			if (bits >= 8) {
+				bits -= 8;
+				out[o++] = (byte) (n >>> bits);
+				n &= (1 << bits) - 1;
+			}
+		}
+		return out;
+	}
+}
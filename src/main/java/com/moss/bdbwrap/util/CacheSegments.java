@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The shared state behind the caches: striped LRU maps bounded by total weight.
+ * Each stripe counts its invalidations, so a reader can tell if what it read from
+ * the database may already be out of date, and tracks keys with uncommitted writes,
+ * which are never filled.
+ */
+final class CacheSegments<K> {
+	
+	/**
+	 * Cached for keys with no record.
+	 */
+	static final Object MISSING = new Object();
+	
+	private static final int MAX_SEGMENTS = 16;
+	
+	private final List<Segment> segments;
+	
+	CacheSegments(long capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		int count = (int) Math.min(MAX_SEGMENTS, capacity);
+		segments = new ArrayList<Segment>(count);
+		for (int i = 0; i < count; i++) {
+			segments.add(new Segment(capacity / count));
+		}
+	}
+	
+	Object get(K key) {
+		return segmentFor(key).get(key);
+	}
+	
+	/**
+	 * Take this before reading the database, and hand it back to {@link #fill}.
+	 */
+	long generation(K key) {
+		return segmentFor(key).generation();
+	}
+	
+	/**
+	 * Caches a value read from the database, unless the key was written since
+	 * the given generation or has a write in flight.
+	 */
+	void fill(K key, Object value, int weight, long generation) {
+		segmentFor(key).fill(key, value, weight, generation);
+	}
+	
+	void invalidate(K key) {
+		segmentFor(key).invalidate(key);
+	}
+	
+	/**
+	 * A transaction wrote the key; nothing is cached for it until {@link #endWrite}.
+	 * 
+	 * @return the stamp to hand back to {@link #endWrite}
+	 */
+	long beginWrite(K key) {
+		return segmentFor(key).beginWrite(key);
+	}
+	
+	/**
+	 * The writing transaction finished.  If it committed a known value, nobody
+	 * else is writing the key, and the key has not been written or invalidated
+	 * since the given stamp, the value is published.  Otherwise a later read
+	 * fills the key from the database.
+	 * 
+	 * @param value the committed value, or null to publish nothing
+	 */
+	void endWrite(K key, Object value, int weight, long stamp) {
+		segmentFor(key).endWrite(key, value, weight, stamp);
+	}
+	
+	void clear() {
+		for (Segment next : segments) {
+			next.clear();
+		}
+	}
+	
+	int size() {
+		int size = 0;
+		for (Segment next : segments) {
+			size += next.size();
+		}
+		return size;
+	}
+	
+	private Segment segmentFor(K key) {
+		int h = key.hashCode();
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return segments.get((h & 0x7fffffff) % segments.size());
+	}
+	
+	static final class Node {
+		final Object value;
+		final int weight;
+		
+		Node(Object value, int weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+	
+	/**
+	 * The transactions writing a key, and the generation of the last write to
+	 * or invalidation of it.
+	 */
+	private static final class Writers {
+		int count;
+		long stamp;
+	}
+	
+	private final class Segment {
+		private final LinkedHashMap<K, Node> map = new LinkedHashMap<K, Node>(16, 0.75f, true);
+		private final Map<K, Writers> writers = new HashMap<K, Writers>();
+		private final long capacity;
+		private long weight;
+		private long generation;
+		
+		Segment(long capacity) {
+			this.capacity = capacity;
+		}
+		
+		synchronized Object get(K key) {
+			Node node = map.get(key);
+			return node == null ? null : node.value;
+		}
+		
+		synchronized long generation() {
+			return generation;
+		}
+		
+		synchronized int size() {
+			return map.size();
+		}
+		
+		synchronized void fill(K key, Object value, int w, long readGeneration) {
+			if (readGeneration == generation && !writers.containsKey(key)) {
+				store(key, value, w);
+			}
+		}
+		
+		synchronized void invalidate(K key) {
+			generation++;
+			Writers w = writers.get(key);
+			if (w != null) {
+				w.stamp = generation;
+			}
+			Node old = map.remove(key);
+			if (old != null) {
+				weight -= old.weight;
+			}
+		}
+		
+		synchronized long beginWrite(K key) {
+			invalidate(key);
+			Writers w = writers.get(key);
+			if (w == null) {
+				w = new Writers();
+				w.stamp = generation;
+				writers.put(key, w);
+			}
+			w.count++;
+			return w.stamp;
+		}
+		
+		synchronized void endWrite(K key, Object value, int w, long stamp) {
+			Writers current = writers.get(key);
+			if (current == null || --current.count > 0) {
+				return;
+			}
+			writers.remove(key);
+			if (value != null && current.stamp == stamp) {
+				generation++;
+				store(key, value, w);
+			}
+		}
+		
+		synchronized void clear() {
+			generation++;
+			for (Writers next : writers.values()) {
+				next.stamp = generation;
+			}
+			map.clear();
+			weight = 0;
+		}
+		
+		private void store(K key, Object value, int w) {
+			if (w > capacity) {
+				return;
+			}
+			
+			Node old = map.put(key, new Node(value, w));
+			if (old != null) {
+				weight -= old.weight;
+			}
+			weight += w;
+			
+			Iterator<Node> eldest = map.values().iterator();
+			while (weight > capacity && eldest.hasNext()) {
+				weight -= eldest.next().weight;
+				eldest.remove();
+			}
+		}
+	}
+}
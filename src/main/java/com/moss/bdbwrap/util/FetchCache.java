@@ -45,6 +45,10 @@ import com.moss.bdbwrap.DbWrap;
 import com.sleepycat.je.LockMode;
 import com.sleepycat.je.Transaction;
 
+/**
+ * @deprecated unbounded and never invalidated; use {@link ReadThroughCache} instead
+ */
+@Deprecated
 public class FetchCache<K, V>{
 	public static <K, V> FetchCache<K, V> create(DbWrap<K, V> db){
 		return new FetchCache<K, V>(db);
@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.moss.bdbwrap.DbWrap;
+import com.moss.bdbwrap.Entries;
+import com.moss.bdbwrap.WriteListener;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.Transaction;
+
+/**
+ * A bounded, thread-safe read-through cache in front of {@link DbWrap#get}.  Misses
+ * are cached too.  Entries live in striped LRU segments and are dropped whenever the
+ * database writes or deletes their key, so the cache never serves a value older than
+ * the last committed write.
+ * <p>
+ * Keys must implement equals() and hashCode().  Reads made with a transaction, or
+ * with {@link LockMode#READ_UNCOMMITTED}, go straight to the database, since what they
+ * see may never be committed.
+ */
+public final class ReadThroughCache<K, V> implements WriteListener {
+	
+	/**
+	 * Holds at most this many keys.
+	 */
+	public static <K, V> ReadThroughCache<K, V> byEntries(DbWrap<K, V> db, int maxEntries){
+		return new ReadThroughCache<K, V>(db, maxEntries, false);
+	}
+	
+	/**
+	 * Holds roughly this many bytes, going by the serialized size of each record.
+	 */
+	public static <K, V> ReadThroughCache<K, V> byBytes(DbWrap<K, V> db, long maxBytes){
+		return new ReadThroughCache<K, V>(db, maxBytes, true);
+	}
+	
+	/**
+	 * What we charge per entry for the map node, the wrapper and the objects
+	 * themselves, on top of the serialized sizes.
+	 */
+	static final int ENTRY_OVERHEAD = 96;
+	
+	private final DbWrap<K, V> db;
+	private final boolean weighBytes;
+	private final CacheSegments<K> segments;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	
+	private ReadThroughCache(DbWrap<K, V> db, long capacity, boolean weighBytes) {
+		this.db = db;
+		this.weighBytes = weighBytes;
+		this.segments = new CacheSegments<K>(capacity);
+		db.withListener(this);
+	}
+	
+	public V get(K key){
+		return get(key, null, LockMode.DEFAULT);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public V get(K key, Transaction t, LockMode mode){
+		if (t != null || mode == LockMode.READ_UNCOMMITTED) {
+			return db.get(key, t, mode);
+		}
+		
+		Object cached = segments.get(key);
+		if (cached != null) {
+			hits.incrementAndGet();
+			return cached == CacheSegments.MISSING ? null : (V) cached;
+		}
+		misses.incrementAndGet();
+		
+		Object value = readThrough(db, segments, weighBytes, key, null, mode);
+		return value == CacheSegments.MISSING ? null : (V) value;
+	}
+	
+	/**
+	 * Reads the key from the database and caches what was found, unless a write
+	 * got in the way.  Returns the value, or {@link CacheSegments#MISSING}.
+	 */
+	static <K, V> Object readThrough(DbWrap<K, V> db, CacheSegments<K> segments, boolean weighBytes, K key, Transaction t, LockMode mode){
+		// any write to the segment from here on makes what we read suspect
+		long generation = segments.generation(key);
+		
+		byte[] keyBytes = db.keySerializer.serialize(key);
+		DatabaseEntry data = new DatabaseEntry();
+		Object value = CacheSegments.MISSING;
+		int size = keyBytes.length;
+		
+		if (OperationStatus.SUCCESS == db.db.get(t, new DatabaseEntry(keyBytes), data, mode)) {
+			value = Entries.read(db.valueSerializer, data);
+			size += data.getSize();
+		}
+		
+		segments.fill(key, value, weighBytes ? size + ENTRY_OVERHEAD : 1, generation);
+		return value;
+	}
+	
+	public void invalidate(K key){
+		segments.invalidate(key);
+	}
+	
+	public void invalidateAll(){
+		segments.clear();
+	}
+	
+	/**
+	 * Stops listening to the database and empties the cache.
+	 */
+	public void close(){
+		db.removeListener(this);
+		invalidateAll();
+	}
+	
+	public int size(){
+		return segments.size();
+	}
+	
+	public long hits(){
+		return hits.get();
+	}
+	
+	public long misses(){
+		return misses.get();
+	}
+	
+	public void written(DatabaseEntry key, Transaction t) {
+		invalidate(Entries.read(db.keySerializer, key));
+	}
+	
+	public void cleared() {
+		invalidateAll();
+	}
+}
@@ -0,0 +1,301 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.moss.bdbwrap.DbWrap;
+import com.moss.bdbwrap.Entries;
+import com.moss.bdbwrap.TransactionListener;
+import com.moss.bdbwrap.WriteListener;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.Transaction;
+
+/**
+ * A read-through cache that can be used inside transactions.  Writes made in a
+ * transaction are staged against it: the transaction sees them, nobody else does,
+ * and the shared cache holds nothing for those keys until the transaction ends.
+ * On commit the staged values are published; on abort they are dropped.
+ * <p>
+ * Transactions must be ended with {@link com.moss.bdbwrap.EnvironmentWrap#commit}
+ * or {@link com.moss.bdbwrap.EnvironmentWrap#abort} (as {@link com.moss.bdbwrap.bdbsession.WorkAtom}
+ * and {@link com.moss.bdbwrap.bdbsession.BdbSession} do).  The keys written by a
+ * transaction ended any other way are not cached again until its {@link Transaction}
+ * has been garbage collected.
+ * <p>
+ * Keys a transaction has not written are served from the shared cache, so reads
+ * through the cache see committed data but take no read locks.
+ */
+public final class TransactionalCache<K, V> implements WriteListener {
+	
+	public static <K, V> TransactionalCache<K, V> byEntries(DbWrap<K, V> db, int maxEntries){
+		return new TransactionalCache<K, V>(db, maxEntries, false);
+	}
+	
+	public static <K, V> TransactionalCache<K, V> byBytes(DbWrap<K, V> db, long maxBytes){
+		return new TransactionalCache<K, V>(db, maxBytes, true);
+	}
+	
+	/**
+	 * Staged for keys the transaction wrote behind our back; read them from the
+	 * database (under the transaction) when asked.
+	 */
+	private static final CacheSegments.Node UNKNOWN = new CacheSegments.Node(null, 0);
+	
+	private final DbWrap<K, V> db;
+	private final boolean weighBytes;
+	private final CacheSegments<K> segments;
+	private final Map<Transaction, Staged> staged = new WeakHashMap<Transaction, Staged>();
+	/**
+	 * Holds every unfinished {@link Staged}, so the ones whose transactions were
+	 * collected without being ended still turn up in {@link #abandoned}.
+	 */
+	private final Set<Staged> open = new HashSet<Staged>();
+	private final ReferenceQueue<Transaction> abandoned = new ReferenceQueue<Transaction>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	
+	private TransactionalCache(DbWrap<K, V> db, long capacity, boolean weighBytes) {
+		this.db = db;
+		this.weighBytes = weighBytes;
+		this.segments = new CacheSegments<K>(capacity);
+		db.withListener(this);
+	}
+	
+	public V get(K key, Transaction t){
+		return get(key, t, LockMode.DEFAULT);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public V get(K key, Transaction t, LockMode mode){
+		if (mode == LockMode.READ_UNCOMMITTED) {
+			return db.get(key, t, mode);
+		}
+		sweep();
+		
+		Staged mine = t == null ? null : staged(t, false);
+		if (mine != null) {
+			CacheSegments.Node node = mine.get(key);
+			if (node == UNKNOWN) {
+				Object value = read(key, t, mode);
+				mine.put(key, value, weigh(key, value));
+				return value == CacheSegments.MISSING ? null : (V) value;
+			}
+			else if (node != null) {
+				return node.value == CacheSegments.MISSING ? null : (V) node.value;
+			}
+		}
+		
+		Object cached = segments.get(key);
+		if (cached != null) {
+			hits.incrementAndGet();
+			return cached == CacheSegments.MISSING ? null : (V) cached;
+		}
+		misses.incrementAndGet();
+		
+		Object value = ReadThroughCache.readThrough(db, segments, weighBytes, key, t, mode);
+		return value == CacheSegments.MISSING ? null : (V) value;
+	}
+	
+	/**
+	 * Writes through to the database and stages the value for the transaction.
+	 */
+	public void put(K key, V value, Transaction t){
+		db.put(key, value, t);
+		if (t != null) {
+			staged(t, true).put(key, value, weigh(key, value));
+		}
+	}
+	
+	public void delete(K key, Transaction t){
+		db.delete(key, t);
+		if (t != null) {
+			staged(t, true).put(key, CacheSegments.MISSING, weigh(key, null));
+		}
+	}
+	
+	public void invalidateAll(){
+		segments.clear();
+	}
+	
+	/**
+	 * Stops listening to the database and empties the shared cache.
+	 */
+	public void close(){
+		db.removeListener(this);
+		invalidateAll();
+	}
+	
+	public int size(){
+		return segments.size();
+	}
+	
+	public long hits(){
+		return hits.get();
+	}
+	
+	public long misses(){
+		return misses.get();
+	}
+	
+	public void written(DatabaseEntry keyEntry, Transaction t) {
+		K key = Entries.read(db.keySerializer, keyEntry);
+		if (t == null) {
+			segments.invalidate(key);
+		}
+		else {
+			staged(t, true).wrote(key);
+		}
+	}
+	
+	public void cleared() {
+		invalidateAll();
+	}
+	
+	private Object read(K key, Transaction t, LockMode mode){
+		V value = db.get(key, t, mode);
+		return value == null ? CacheSegments.MISSING : value;
+	}
+	
+	private int weigh(K key, Object value){
+		if (!weighBytes) {
+			return 1;
+		}
+		int size = db.keySerializer.serialize(key).length + ReadThroughCache.ENTRY_OVERHEAD;
+		if (value != null && value != CacheSegments.MISSING) {
+			@SuppressWarnings("unchecked")
+			V v = (V) value;
+			size += db.valueSerializer.serialize(v).length;
+		}
+		return size;
+	}
+	
+	private Staged staged(Transaction t, boolean create){
+		if (create) {
+			sweep();
+		}
+		synchronized (staged) {
+			Staged mine = staged.get(t);
+			if (mine == null && create) {
+				mine = new Staged(t);
+				staged.put(t, mine);
+				open.add(mine);
+				db.envWrap.onCompletion(t, mine);
+			}
+			return mine;
+		}
+	}
+	
+	/**
+	 * Releases the keys of transactions that were never ended through the environment.
+	 */
+	@SuppressWarnings("unchecked") // only Staged instances are registered with the queue
+	private void sweep(){
+		Reference<? extends Transaction> next;
+		while ((next = abandoned.poll()) != null) {
+			((Staged) next).end(false);
+		}
+	}
+	
+	/**
+	 * One transaction's writes.  Refers to the transaction weakly, so it can be
+	 * swept up if the transaction is dropped without being ended.
+	 */
+	private final class Staged extends WeakReference<Transaction> implements TransactionListener {
+		private final Map<K, CacheSegments.Node> writes = new HashMap<K, CacheSegments.Node>();
+		private final Map<K, Long> stamps = new HashMap<K, Long>();
+		
+		Staged(Transaction t) {
+			super(t, abandoned);
+		}
+		
+		synchronized CacheSegments.Node get(K key) {
+			return writes.get(key);
+		}
+		
+		synchronized void wrote(K key) {
+			if (!writes.containsKey(key)) {
+				stamps.put(key, segments.beginWrite(key));
+			}
+			writes.put(key, UNKNOWN);
+		}
+		
+		synchronized void put(K key, Object value, int weight) {
+			if (!writes.containsKey(key)) {
+				stamps.put(key, segments.beginWrite(key));
+			}
+			writes.put(key, new CacheSegments.Node(value, weight));
+		}
+		
+		public void committed(Transaction t) {
+			end(true);
+		}
+		
+		public void aborted(Transaction t) {
+			end(false);
+		}
+		
+		private synchronized void end(boolean publish) {
+			Transaction t = get();
+			clear();
+			synchronized (staged) {
+				if (t != null) {
+					staged.remove(t);
+				}
+				open.remove(this);
+			}
+			for (Map.Entry<K, CacheSegments.Node> next : writes.entrySet()) {
+				CacheSegments.Node node = next.getValue();
+				boolean known = publish && node != UNKNOWN;
+				segments.endWrite(next.getKey(), known ? node.value : null, node.weight, stamps.get(next.getKey()));
+			}
+			writes.clear();
+			stamps.clear();
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.versioned;
+
+import com.moss.bdbwrap.ChunkedJob;
+import com.moss.bdbwrap.DbWrap;
+import com.moss.bdbwrap.ValueWorker;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * Walks a store whose values use a {@link VersionedSerializer} and rewrites every
+ * record that isn't at the current version, a few records per transaction with a
+ * pause in between, so the store stays usable while it runs.  Records already at
+ * the current version aren't deserialized.
+ * <p>
+ * Like any {@link ChunkedJob}, rewrites go through the cursor: secondaries are kept
+ * up to date but put hooks are not fired.
+ */
+public class VersionRewriter <K, V> extends ChunkedJob<K, V> {
+	private final VersionedSerializer<V> serializer;
+	
+	public VersionRewriter(DbWrap<K, V> db) {
+		super(db);
+		if (!(db.valueSerializer instanceof VersionedSerializer)) {
+			throw new RuntimeException("The values of '" + db.name + "' are not versioned");
+		}
+		this.serializer = (VersionedSerializer<V>) db.valueSerializer;
+		withChunkSize(100);
+		withPause(50);
+	}
+	
+	public VersionRewriter<K, V> withBatchSize(int batchSize) {
+		withChunkSize(batchSize);
+		return this;
+	}
+	
+	/**
+	 * The pause between batches; can be changed while the rewriter runs.
+	 */
+	@Override
+	public VersionRewriter<K, V> withPause(long pauseMillis) {
+		super.withPause(pauseMillis);
+		return this;
+	}
+	
+	public long rewritten() {
+		return updated();
+	}
+	
+	@Override
+	protected ValueWorker.Result<V> process(DatabaseEntry key, DatabaseEntry data, Cursor cursor) {
+		if (serializer.isCurrent(data)) {
+			return ValueWorker.Result.nothing();
+		}
+		return ValueWorker.Result.update(serializer.deSerialize(data));
+	}
+}
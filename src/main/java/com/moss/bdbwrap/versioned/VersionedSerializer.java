@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.versioned;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.moss.bdbwrap.BufferSerializer;
+import com.moss.bdbwrap.Entries;
+import com.moss.bdbwrap.EntryBuffer;
+import com.moss.bdbwrap.Serializer;
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * Prefixes each record with a magic byte and a schema version.  Records are always
+ * written at the current version; older ones are passed through the upgrade
+ * registered for their version when read.  Records without the envelope (written
+ * before a store adopted this serializer) count as version 0.
+ * <p>
+ * See {@link VersionRewriter} for bringing the stored records up to date.
+ */
+public class VersionedSerializer <T> implements BufferSerializer<T> {
+	static final int MAGIC = 0xFB;
+	static final int HEADER_SIZE = 3;
+	
+	private final int currentVersion;
+	private final Serializer<T> current;
+	private final Map<Integer, VersionUpgrade<T>> upgrades = new ConcurrentHashMap<Integer, VersionUpgrade<T>>();
+	
+	public VersionedSerializer(int currentVersion, Serializer<T> current) {
+		super();
+		if (currentVersion < 1 || currentVersion > 0xFFFF) {
+			throw new RuntimeException("Versions must be between 1 and " + 0xFFFF + " (got " + currentVersion + ")");
+		}
+		this.currentVersion = currentVersion;
+		this.current = current;
+	}
+	
+	public VersionedSerializer<T> withUpgrade(int version, VersionUpgrade<T> upgrade) {
+		if (version >= currentVersion) {
+			throw new RuntimeException("Version " + version + " is not older than the current version (" + currentVersion + ")");
+		}
+		upgrades.put(version, upgrade);
+		return this;
+	}
+	
+	public int currentVersion() {
+		return currentVersion;
+	}
+	
+	/**
+	 * The version a stored record was written at.
+	 */
+	public int version(DatabaseEntry entry) {
+		byte[] data = entry.getData();
+		int offset = entry.getOffset();
+		if (entry.getSize() < HEADER_SIZE || (data[offset] & 0xFF) != MAGIC) {
+			return 0;
+		}
+		return ((data[offset + 1] & 0xFF) << 8) | (data[offset + 2] & 0xFF);
+	}
+	
+	public boolean isCurrent(DatabaseEntry entry) {
+		return version(entry) == currentVersion;
+	}
+	
+	public byte[] serialize(T obj) {
+		EntryBuffer out = new EntryBuffer();
+		serialize(obj, out);
+		return out.toByteArray();
+	}
+	
+	public void serialize(T obj, EntryBuffer out) {
+		out.write(MAGIC);
+		out.write(currentVersion >>> 8);
+		out.write(currentVersion);
+		if (current instanceof BufferSerializer) {
+			((BufferSerializer<T>) current).serialize(obj, out);
+		}
+		else {
+			out.write(current.serialize(obj));
+		}
+	}
+	
+	public T deSerialize(byte[] data) {
+		return deSerialize(new DatabaseEntry(data));
+	}
+	
+	public T deSerialize(DatabaseEntry entry) {
+		if (entry.getData() == null) {
+			return current.deSerialize(null);
+		}
+		int version = version(entry);
+		int bodyOffset = version == 0 ? 0 : HEADER_SIZE;
+		DatabaseEntry body = new DatabaseEntry(entry.getData(), entry.getOffset() + bodyOffset, entry.getSize() - bodyOffset);
+		
+		if (version == currentVersion) {
+			return Entries.read(current, body);
+		}
+		
+		VersionUpgrade<T> upgrade = upgrades.get(version);
+		if (upgrade == null) {
+			throw new RuntimeException("Don't know how to read a version " + version + " record (current version is " + currentVersion + ")");
+		}
+		return upgrade.upgrade(Entries.bytes(body));
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+public class BulkLoadTest extends TestCase {
+
+	private File dir;
+	private EnvironmentWrap env;
+	private LongKeyDbWrap<String> db;
+	private LongKeySecondaryDbWrap<String> byLength;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = TempDir.create();
+		open();
+		for (long i = 0; i < 10; i++) {
+			db.put(i, "old-" + i, null);
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		env.close();
+	}
+
+	private void open() {
+		env = new TestEnvironmentWrap(dir, false);
+		db = new LongKeyDbWrap<String>("values", TestEnvironmentWrap.STRINGS, env);
+		byLength = new LongKeySecondaryDbWrap<String>("values-by-length", db) {
+			public Long extractKey(String value) {
+				return (long) value.length();
+			}
+		};
+		env.load();
+	}
+
+	private static void assertRefused(String message, RuntimeException ex) {
+		assertTrue(message + ": " + ex.getMessage(), ex.getMessage().contains("bulk load"));
+	}
+
+	public void testSecondariesRebuiltOnFinish() {
+		BulkLoad<Long, String> load = env.bulkLoad(db);
+		for (long i = 100; i < 400; i++) {
+			load.add(i, "loaded-" + i);
+		}
+		load.finish();
+
+		assertEquals(310, db.count(null));
+		assertEquals("old records", 10, byLength.count(5L, null));
+		assertEquals("loaded records", 300, byLength.count(10L, null));
+		assertEquals(310, byLength.count(null));
+		assertEquals("loaded-100", byLength.get(10L, null, null));
+
+		// writes after the load are indexed as usual
+		db.put(1000L, "x", null);
+		assertEquals("x", byLength.get(1L, null, null));
+	}
+
+	public void testSecondaryUnusableWhileLoading() {
+		BulkLoad<Long, String> load = env.bulkLoad(db);
+		load.add(100L, "loaded");
+		try {
+			byLength.get(5L, null, null);
+			fail("A detached secondary can't be read");
+		}
+		catch (RuntimeException ex) {
+			assertRefused("reading the secondary", ex);
+		}
+		try {
+			db.clear();
+			fail("Clearing would leave the rebuilt secondaries stale");
+		}
+		catch (RuntimeException ex) {
+			assertRefused("clearing", ex);
+		}
+		try {
+			env.bulkLoad(db);
+			fail("Only one load at a time");
+		}
+		catch (RuntimeException ex) {
+			assertRefused("a second load", ex);
+		}
+		assertEquals("the primary stays readable", "old-3", db.get(3L, null, null));
+
+		load.finish();
+		assertEquals("loaded", byLength.get(6L, null, null));
+		load.finish();
+	}
+
+	public void testCloseWithLoadOpen() {
+		BulkLoad<Long, String> load = env.bulkLoad(db);
+		for (long i = 100; i < 200; i++) {
+			load.add(i, "loaded-" + i);
+		}
+		load.writer().flush();
+		env.close();
+
+		// the secondary was removed when the load began, so opening rebuilds it
+		open();
+		assertEquals(110, byLength.count(null));
+		assertEquals("loaded-100", byLength.get(10L, null, null));
+		assertEquals("old-0", byLength.get(5L, null, null));
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.sleepycat.je.DatabaseEntry;
+
+public class BulkWriterTest extends TestCase {
+
+	private EnvironmentWrap env;
+	private LongKeyDbWrap<String> db;
+	private LongKeySecondaryDbWrap<String> byLength;
+	private int hooked;
+	private int intercepted;
+
+	@Override
+	protected void setUp() throws Exception {
+		env = new TestEnvironmentWrap(TempDir.create(), false);
+		db = new LongKeyDbWrap<String>("values", TestEnvironmentWrap.STRINGS, env);
+		db.withHook(new PutHook<Long, String>() {
+			public void putHappened(Long key, DatabaseEntry keyEntry, String value, DatabaseEntry valueEntry, DbWrap<Long, String> db) {
+				hooked++;
+			}
+		});
+		db.withHook(new PutInterceptHook<Long, String>() {
+			public void intercept(Long key, String value) {
+				intercepted++;
+			}
+		});
+		byLength = new LongKeySecondaryDbWrap<String>("values-by-length", db) {
+			public Long extractKey(String value) {
+				return (long) value.length();
+			}
+		};
+		env.load();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		env.close();
+	}
+
+	public void testChunksAndBuffers() {
+		BulkWriter<Long, String> writer = new BulkWriter<Long, String>(db).withChunkSize(100).withBufferSize(1000);
+		for (long i = 2500; i > 0; i--) {
+			writer.add(i, "v" + i);
+		}
+		assertEquals("two full buffers written", 2000, writer.written());
+		assertEquals(500, writer.buffered());
+		writer.flush();
+		assertEquals(2500, writer.written());
+		assertEquals(0, writer.buffered());
+
+		assertEquals(2500, hooked);
+		assertEquals(2500, intercepted);
+		for (long i = 1; i <= 2500; i++) {
+			assertEquals("v" + i, db.get(i, null, null));
+		}
+		assertEquals("secondary kept up", "v1000", byLength.get(5L, null, null));
+	}
+
+	public void testLastDuplicateWins() {
+		BulkWriter<Long, String> writer = new BulkWriter<Long, String>(db).withChunkSize(3);
+		writer.add(5L, "first");
+		for (long i = 0; i < 10; i++) {
+			writer.add(i, "v" + i);
+		}
+		writer.add(5L, "second");
+		writer.add(7L, "again");
+		writer.add(5L, "third");
+		writer.flush();
+
+		assertEquals(14, writer.written());
+		assertEquals("third", db.get(5L, null, null));
+		assertEquals("again", db.get(7L, null, null));
+		assertEquals("v6", db.get(6L, null, null));
+
+		// only the survivors are indexed
+		assertNull(byLength.get(6L, null, null));
+		assertEquals("third", byLength.get(5L, null, null));
+	}
+
+	public void testLastDuplicateWinsAcrossBuffers() {
+		BulkWriter<Long, String> writer = new BulkWriter<Long, String>(db).withChunkSize(2).withBufferSize(4);
+		writer.add(1L, "a").add(2L, "a").add(3L, "a").add(1L, "b");
+		assertEquals(0, writer.buffered());
+		writer.add(1L, "c");
+		writer.flush();
+		assertEquals("c", db.get(1L, null, null));
+		assertEquals("a", db.get(2L, null, null));
+	}
+
+	public void testPutAll() {
+		Map<Long, String> records = new LinkedHashMap<Long, String>();
+		for (long i = 300; i > 0; i--) {
+			records.put(i, "v" + i);
+		}
+		records.put(7L, "x");
+		db.putAll(records);
+		assertEquals(300, hooked);
+		assertEquals("x", db.get(7L, null, null));
+		assertEquals("v300", db.get(300L, null, null));
+		assertEquals("v1", db.get(1L, null, null));
+	}
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import junit.framework.TestCase;
+
+import com.moss.bdbwrap.defaults.DefaultBinaryDbWrap;
+import com.moss.bdbwrap.ordered.StringKeySerializer;
+import com.sleepycat.je.Cursor;
+
+public class ChunkedJobTest extends TestCase {
+
+	private EnvironmentWrap env;
+	private LongKeyDbWrap<String> db;
+	private DefaultBinaryDbWrap<String> positions;
+
+	@Override
+	protected void setUp() throws Exception {
+		env = new TestEnvironmentWrap(TempDir.create(), false);
+		db = new LongKeyDbWrap<String>("values", TestEnvironmentWrap.STRINGS, env);
+		positions = new DefaultBinaryDbWrap<String>("positions", new StringKeySerializer(), env);
+		env.load();
+		for (long i = 0; i < 1000; i++) {
+			db.put(i, "v" + i, null);
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		env.close();
+	}
+
+	/**
+	 * Deletes even records and rewrites odd ones, dying on the given call.
+	 */
+	private static class Worker implements ValueWorker<String> {
+		private final int failOn;
+		private int calls;
+
+		Worker(int failOn) {
+			this.failOn = failOn;
+		}
+
+		public Result<String> next(String value, Cursor cursor) {
+			if (++calls == failOn) {
+				throw new IllegalStateException("Failing on call " + calls);
+			}
+			long n = Long.parseLong(value.substring(1));
+			if (n % 2 == 0) {
+				return Result.delete();
+			}
+			return Result.update("u" + n);
+		}
+	}
+
+	public void testRunsToTheEnd() {
+		ChunkedJob<Long, String> job = new ChunkedJob<Long, String>(db, new Worker(-1)).withChunkSize(100);
+		job.run();
+
+		assertTrue(job.isFinished());
+		assertNull(job.failure());
+		assertEquals(1000, job.visited());
+		assertEquals(500, job.updated());
+		assertEquals(500, job.deleted());
+		assertEquals(500, db.count(null));
+		assertEquals("u1", db.get(1L, null, null));
+		assertNull(db.get(2L, null, null));
+	}
+
+	public void testResumesAfterLastCommittedChunk() {
+		DbJobCheckpoint checkpoint = new DbJobCheckpoint(positions, "rewrite");
+
+		ChunkedJob<Long, String> job = new ChunkedJob<Long, String>(db, new Worker(350)).withChunkSize(100).withCheckpoint(checkpoint);
+		try {
+			job.run();
+			fail("The worker should have failed the job");
+		}
+		catch (RuntimeException ex) {
+			assertSame(job.failure(), ex);
+		}
+		assertFalse(job.isFinished());
+		assertEquals("three chunks committed", 300, job.visited());
+		assertNotNull(positions.get("rewrite", null, null));
+		assertEquals("u299", db.get(299L, null, null));
+		assertEquals("the failed chunk rolled back", "v301", db.get(301L, null, null));
+
+		ChunkedJob<Long, String> resumed = new ChunkedJob<Long, String>(db, new Worker(-1)).withChunkSize(100).withCheckpoint(checkpoint);
+		resumed.run();
+		assertTrue(resumed.isFinished());
+		assertEquals(700, resumed.visited());
+		assertEquals(350, resumed.deleted());
+		assertNull("a finished job clears its position", positions.get("rewrite", null, null));
+		assertEquals(500, db.count(null));
+		assertEquals("u999", db.get(999L, null, null));
+	}
+
+	public void testRange() {
+		ChunkedJob<Long, String> job = new ChunkedJob<Long, String>(db, new Worker(-1)).withChunkSize(7).withRange(KeyRange.between(100L, 200L));
+		job.run();
+
+		assertEquals(100, job.visited());
+		assertEquals("v99", db.get(99L, null, null));
+		assertEquals("u101", db.get(101L, null, null));
+		assertEquals("v201", db.get(201L, null, null));
+	}
+
+	public void testStartedJobReportsFailure() throws InterruptedException {
+		ChunkedJob<Long, String> job = new ChunkedJob<Long, String>(db, new Worker(1));
+		job.start();
+		try {
+			job.join();
+			fail("join() should report the failure");
+		}
+		catch (RuntimeException ex) {
+			assertNotNull(job.failure());
+			assertSame(job.failure(), ex.getCause());
+		}
+		assertFalse(job.isFinished());
+		assertEquals(1000, db.count(null));
+	}
+
+	/**
+	 * Runs the job on a thread of its own and interrupts it in its first pause.
+	 */
+	private static void interruptInPause(final ChunkedJob<Long, String> job, boolean stop) throws InterruptedException {
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					job.run();
+				}
+				catch (RuntimeException ex) {
+					// kept by failure()
+				}
+			}
+		};
+		thread.start();
+		while (job.visited() == 0) {
+			Thread.sleep(10);
+		}
+		if (stop) {
+			job.stop();
+		}
+		thread.interrupt();
+		thread.join(10000);
+		assertFalse(thread.isAlive());
+	}
+
+	public void testInterruptedJobReportsFailure() throws InterruptedException {
+		ChunkedJob<Long, String> job = new ChunkedJob<Long, String>(db, new Worker(-1)).withChunkSize(100).withPause(60000);
+		interruptInPause(job, false);
+		assertFalse(job.isFinished());
+		assertNotNull(job.failure());
+		assertEquals(100, job.visited());
+	}
+
+	public void testStoppedJobInterruptedCleanly() throws InterruptedException {
+		ChunkedJob<Long, String> job = new ChunkedJob<Long, String>(db, new Worker(-1)).withChunkSize(100).withPause(60000);
+		interruptInPause(job, true);
+		assertFalse(job.isFinished());
+		assertNull(job.failure());
+	}
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+
+import com.sleepycat.je.Transaction;
+
+public class CursorIteratorTest extends TestCase {
+
+	private EnvironmentWrap env;
+	private LongKeyDbWrap<String> db;
+
+	@Override
+	protected void setUp() throws Exception {
+		env = new TestEnvironmentWrap(TempDir.create(), false);
+		db = new LongKeyDbWrap<String>("values", TestEnvironmentWrap.STRINGS, env);
+		env.load();
+		for (long i = 0; i < 5000; i++) {
+			db.put(i, "v" + i, null);
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		env.close();
+	}
+
+	private static <T> List<T> all(Iterable<T> view) {
+		List<T> all = new ArrayList<T>();
+		for (T next : view) {
+			all.add(next);
+		}
+		return all;
+	}
+
+	public void testViews() {
+		assertEquals(Arrays.asList(10L, 11L, 12L, 13L, 14L), all(db.keys(KeyRange.between(10L, 15L), null)));
+		assertEquals(Arrays.asList("v14", "v13", "v12"), all(db.values(KeyRange.between(10L, 15L).reversed().withLimit(3), null)));
+
+		CursorIterator<KeyValue<Long, String>> entries = db.entries(KeyRange.<Long>all().reversed(), null).iterator();
+		try {
+			KeyValue<Long, String> last = entries.next();
+			assertEquals(Long.valueOf(4999), last.getKey());
+			assertEquals("v4999", last.getValue());
+		}
+		finally {
+			entries.close();
+		}
+
+		RangeView<Long> view = db.keys(KeyRange.<Long>all().withFrom(4997L, false), null);
+		assertEquals("each iteration starts over", all(view), all(view));
+		assertEquals(Arrays.asList(4998L, 4999L), all(view));
+	}
+
+	public void testClosesAtTheEnd() {
+		Transaction t = env.begin();
+		CursorIterator<String> values = db.values(KeyRange.between(0L, 3L), t).iterator();
+		assertEquals("v0", values.next());
+		assertEquals("v1", values.next());
+		assertEquals("v2", values.next());
+		assertFalse(values.hasNext());
+		try {
+			values.next();
+			fail("An exhausted iterator has no more");
+		}
+		catch (NoSuchElementException ex) {
+			// expected
+		}
+		// a transaction with an open cursor couldn't commit
+		env.commit(t);
+	}
+
+	public void testCloseWhenStoppingEarly() {
+		Transaction t = env.begin();
+		CursorIterator<String> values = db.values(KeyRange.<Long>all(), t).iterator();
+		assertEquals("v0", values.next());
+		values.close();
+		values.close();
+		assertFalse(values.hasNext());
+		// a transaction with an open cursor couldn't commit
+		env.commit(t);
+	}
+
+	public void testRemoveUnsupported() {
+		CursorIterator<Long> keys = db.keys(KeyRange.<Long>all(), null).iterator();
+		try {
+			keys.next();
+			keys.remove();
+			fail("Iterators are read only");
+		}
+		catch (UnsupportedOperationException ex) {
+			// expected
+		}
+		finally {
+			keys.close();
+		}
+	}
+
+	public void testSplitCoversTheView() {
+		List<RangeView<Long>> parts = db.keys(KeyRange.<Long>all(), null).split(4);
+		assertEquals(4, parts.size());
+		long expected = 0;
+		for (RangeView<Long> part : parts) {
+			for (Long next : part) {
+				assertEquals(expected++, next.longValue());
+			}
+		}
+		assertEquals(5000, expected);
+	}
+
+	public void testSplitKeepsBoundsAndOrder() {
+		List<RangeView<Long>> parts = db.keys(KeyRange.<Long>all().withFrom(100L, false).withTo(900L, true).reversed(), null).split(3);
+		assertTrue(parts.size() > 1);
+		long expected = 900;
+		for (RangeView<Long> part : parts) {
+			for (Long next : part) {
+				assertEquals(expected--, next.longValue());
+			}
+		}
+		assertEquals(100, expected);
+	}
+
+	public void testLimitedViewNotSplit() {
+		RangeView<Long> view = db.keys(KeyRange.<Long>all().withLimit(10), null);
+		List<RangeView<Long>> parts = view.split(4);
+		assertEquals(1, parts.size());
+		assertEquals(10, all(parts.get(0)).size());
+	}
+
+	public void testSplitEmpty() {
+		List<RangeView<Long>> parts = db.keys(KeyRange.between(6000L, 7000L), null).split(4);
+		int count = 0;
+		for (RangeView<Long> part : parts) {
+			count += all(part).size();
+		}
+		assertEquals(0, count);
+	}
+}
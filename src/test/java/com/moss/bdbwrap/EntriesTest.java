@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.sleepycat.je.DatabaseEntry;
+
+public class EntriesTest extends TestCase {
+
+	/**
+	 * A plain serializer, to cover the byte[] fallbacks.
+	 */
+	static class PlainStrings implements Serializer<String> {
+		public byte[] serialize(String obj) {
+			return TestEnvironmentWrap.STRINGS.serialize(obj);
+		}
+		public String deSerialize(byte[] data) {
+			return TestEnvironmentWrap.STRINGS.deSerialize(data);
+		}
+	}
+
+	public void testBufferGrowsAndKeepsItsContents() {
+		EntryBuffer buffer = new EntryBuffer(4);
+		for (int i = 0; i < 100; i++) {
+			buffer.write(i);
+		}
+		assertEquals(100, buffer.size());
+		assertTrue(buffer.capacity() >= 100);
+		byte[] bytes = buffer.toByteArray();
+		assertEquals(100, bytes.length);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i, bytes[i]);
+		}
+
+		int capacity = buffer.capacity();
+		buffer.reset();
+		assertEquals(0, buffer.size());
+		assertEquals("reset keeps the array", capacity, buffer.capacity());
+		buffer.write(new byte[] {7, 8, 9});
+		assertTrue(Arrays.equals(new byte[] {7, 8, 9}, buffer.toByteArray()));
+	}
+
+	public void testAdvanceAndTruncate() {
+		EntryBuffer buffer = new EntryBuffer(2);
+		buffer.write(1);
+		buffer.ensureCapacity(5);
+		buffer.data()[1] = 2;
+		buffer.data()[2] = 3;
+		buffer.advance(2);
+		assertTrue(Arrays.equals(new byte[] {1, 2, 3}, buffer.toByteArray()));
+		buffer.truncate(1);
+		assertTrue(Arrays.equals(new byte[] {1}, buffer.toByteArray()));
+		try {
+			buffer.advance(buffer.capacity());
+			fail("Advancing past the array should be refused");
+		}
+		catch (IndexOutOfBoundsException ex) {
+			// expected
+		}
+		try {
+			buffer.truncate(2);
+			fail("Truncating can't grow the buffer");
+		}
+		catch (IndexOutOfBoundsException ex) {
+			// expected
+		}
+	}
+
+	public void testPerThreadReplacesLargeBuffers() {
+		EntryBuffer.PerThread buffers = new EntryBuffer.PerThread();
+		EntryBuffer small = buffers.acquire();
+		small.write(1);
+		assertSame(small, buffers.acquire());
+		assertEquals("acquired buffers are reset", 0, small.size());
+
+		small.write(new byte[128 * 1024]);
+		EntryBuffer replacement = buffers.acquire();
+		assertNotSame(small, replacement);
+		assertSame(replacement, buffers.acquire());
+	}
+
+	public void testReadsSlices() {
+		byte[] whole = "xxhelloyy".getBytes();
+		DatabaseEntry slice = new DatabaseEntry(whole, 2, 5);
+		assertEquals("hello", Entries.read(TestEnvironmentWrap.STRINGS, slice));
+		assertEquals("hello", Entries.read(new PlainStrings(), slice));
+		assertTrue(Arrays.equals("hello".getBytes(), Entries.bytes(slice)));
+		assertTrue(Arrays.equals("hello".getBytes(), Entries.read(new BinarySerializer(), slice)));
+
+		DatabaseEntry exact = new DatabaseEntry(whole);
+		assertSame("whole arrays aren't copied", whole, Entries.bytes(exact));
+		assertNull(Entries.bytes(new DatabaseEntry()));
+	}
+
+	public void testWritesMatchTheArrayPath() {
+		EntryBuffer scratch = new EntryBuffer(1);
+		DatabaseEntry entry = new DatabaseEntry();
+		String[] values = {"", "plain", "\u00fcnicode \u20ac", null};
+		for (String next : values) {
+			byte[] expected = TestEnvironmentWrap.STRINGS.serialize(next);
+			Entries.write(TestEnvironmentWrap.STRINGS, next, scratch, entry);
+			assertTrue(next, Arrays.equals(expected, Entries.bytes(entry)));
+			assertSame("the entry points into the scratch buffer", scratch.data(), entry.getData());
+			assertEquals(next, Entries.read(TestEnvironmentWrap.STRINGS, entry));
+			assertTrue(next, Arrays.equals(expected, Entries.toBytes(TestEnvironmentWrap.STRINGS, next, scratch)));
+
+			Entries.write(new PlainStrings(), next, scratch, entry);
+			assertTrue(next, Arrays.equals(expected, Entries.bytes(entry)));
+		}
+	}
+
+	public void testPutAndGetThroughTheDatabase() {
+		EnvironmentWrap env = new TestEnvironmentWrap(TempDir.create(), false);
+		DbWrap<String, String> buffered = new DbWrap<String, String>("buffered", TestEnvironmentWrap.STRINGS, TestEnvironmentWrap.STRINGS, env);
+		DbWrap<String, String> plain = new DbWrap<String, String>("plain", new PlainStrings(), new PlainStrings(), env);
+		DbWrap<byte[], byte[]> binary = new DbWrap<byte[], byte[]>("binary", new BinarySerializer(), new BinarySerializer(), env);
+		env.load();
+		try {
+			StringBuilder large = new StringBuilder();
+			for (int i = 0; i < 20000; i++) {
+				large.append(i % 10);
+			}
+			for (int i = 0; i < 50; i++) {
+				String value = i % 10 == 0 ? large.toString() + i : "value-" + i;
+				buffered.put("key-" + i, value, null);
+				plain.put("key-" + i, value, null);
+				binary.put(("key-" + i).getBytes(), value.getBytes(), null);
+			}
+			for (int i = 0; i < 50; i++) {
+				String value = i % 10 == 0 ? large.toString() + i : "value-" + i;
+				assertEquals(value, buffered.get("key-" + i, null, null));
+				assertEquals(value, plain.get("key-" + i, null, null));
+				assertTrue(Arrays.equals(value.getBytes(), binary.get(("key-" + i).getBytes(), null, null)));
+			}
+			assertNull(buffered.get("missing", null, null));
+		}
+		finally {
+			env.close();
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.Transaction;
+
+public class GroupCommitWriterTest extends TestCase {
+
+	private static final long BAD_KEY = 13;
+
+	private EnvironmentWrap env;
+	private LongKeyDbWrap<String> db;
+	private final Set<Transaction> transactions = Collections.synchronizedSet(new HashSet<Transaction>());
+
+	@Override
+	protected void setUp() throws Exception {
+		env = new TestEnvironmentWrap(TempDir.create(), false);
+		db = new LongKeyDbWrap<String>("values", TestEnvironmentWrap.STRINGS, env);
+		env.load();
+		db.withListener(new WriteListener() {
+			public void written(DatabaseEntry key, Transaction t) {
+				if (Entries.read(db.keySerializer, key) == BAD_KEY) {
+					throw new RuntimeException("Refusing key " + BAD_KEY);
+				}
+				transactions.add(t);
+			}
+			public void cleared() {
+			}
+		});
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		env.close();
+	}
+
+	public void testPutsShareATransaction() throws Exception {
+		GroupCommitWriter writer = new GroupCommitWriter(env).withMaxWait(1000);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (long i = 0; i < 10; i++) {
+			futures.add(writer.submit(db.prePut(i, "value-" + i)));
+		}
+		for (Future<Void> next : futures) {
+			next.get();
+		}
+		writer.close();
+
+		assertEquals(1, transactions.size());
+		for (long i = 0; i < 10; i++) {
+			assertEquals("value-" + i, db.get(i, null, null));
+		}
+	}
+
+	public void testFailedBatchRetriedOneAtATime() throws Exception {
+		GroupCommitWriter writer = new GroupCommitWriter(env).withMaxWait(1000).withAttempts(1);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (long i = 10; i < 20; i++) {
+			futures.add(writer.submit(db.prePut(i, "value-" + i)));
+		}
+
+		for (int i = 0; i < futures.size(); i++) {
+			long key = 10 + i;
+			try {
+				futures.get(i).get();
+				assertTrue(key != BAD_KEY);
+				assertEquals("value-" + key, db.get(key, null, null));
+			}
+			catch (ExecutionException ex) {
+				assertEquals(BAD_KEY, key);
+				assertNull(db.get(key, null, null));
+			}
+		}
+		writer.close();
+
+		assertEquals("the failed batch, then one per good put", 10, transactions.size());
+	}
+
+	public void testCloseWritesWhatIsQueued() throws Exception {
+		GroupCommitWriter writer = new GroupCommitWriter(env).withMaxBatch(3);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (long i = 100; i < 120; i++) {
+			futures.add(writer.submit(db.prePut(i, "value-" + i)));
+		}
+		writer.close();
+
+		for (Future<Void> next : futures) {
+			assertTrue(next.isDone());
+		}
+		for (long i = 100; i < 120; i++) {
+			assertEquals("value-" + i, db.get(i, null, null));
+		}
+		try {
+			writer.submit(db.prePut(200L, "late"));
+			fail("A closed writer should refuse puts");
+		}
+		catch (RuntimeException ex) {
+			// expected
+		}
+	}
+
+	public void testInterruptWritesTheBatchInHand() throws Exception {
+		GroupCommitWriter writer = new GroupCommitWriter(env).withMaxWait(60000);
+		Future<Void> future = writer.submit(db.prePut(300L, "value-300"));
+
+		// the writer holds the put while it waits for others to join the batch
+		Thread thread = null;
+		while (thread == null) {
+			for (Thread next : Thread.getAllStackTraces().keySet()) {
+				if (next.getName().equals("Group commit writer") && next.getState() == Thread.State.TIMED_WAITING) {
+					thread = next;
+				}
+			}
+			Thread.sleep(10);
+		}
+		Thread.sleep(100);
+		thread.interrupt();
+
+		future.get(10, TimeUnit.SECONDS);
+		assertEquals("value-300", db.get(300L, null, null));
+		writer.close();
+	}
+}
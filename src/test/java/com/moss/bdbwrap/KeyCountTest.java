@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.moss.bdbwrap.ordered.LongKeySerializer;
+import com.sleepycat.je.Transaction;
+
+public class KeyCountTest extends TestCase {
+
+	private EnvironmentWrap env;
+	private LongKeyDbWrap<String> db;
+	private DbWrap<Long, String> dups;
+	private LongKeySecondaryDbWrap<String> byLength;
+
+	@Override
+	protected void setUp() throws Exception {
+		env = new TestEnvironmentWrap(TempDir.create(), false);
+		db = new LongKeyDbWrap<String>("values", TestEnvironmentWrap.STRINGS, env);
+		dups = new DbWrap<Long, String>("dups", new LongKeySerializer(), TestEnvironmentWrap.STRINGS, env).permitDuplicateKeys();
+		byLength = new LongKeySecondaryDbWrap<String>("values-by-length", db) {
+			public Long extractKey(String value) {
+				return (long) value.length();
+			}
+		};
+		env.load();
+		// "v0" to "v999": 10 values of length 2, 90 of 3, 900 of 4
+		for (long i = 0; i < 1000; i++) {
+			db.put(i, "v" + i, null);
+		}
+		// even keys 0 to 18, each twice
+		for (long i = 0; i < 20; i += 2) {
+			dups.put(i, "a" + i, null);
+			dups.put(i, "b" + i, null);
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		env.close();
+	}
+
+	private static List<Long> keys(DbWrap<Long, String> db, KeyRange<Long> range) {
+		final List<Long> keys = new ArrayList<Long>();
+		db.scanKeys(range, new KeyVisitor<Long>() {
+			public boolean next(Long key) {
+				keys.add(key);
+				return true;
+			}
+		}, null);
+		return keys;
+	}
+
+	private Map<Long, Integer> keyCounts(KeyRange<Long> range) {
+		final Map<Long, Integer> counts = new LinkedHashMap<Long, Integer>();
+		byLength.scanKeyCounts(range, new SearchVisitor<Long, Integer>() {
+			public boolean next(Long key, Integer count) {
+				counts.put(key, count);
+				return true;
+			}
+		}, null);
+		return counts;
+	}
+
+	public void testPrimaryCounts() {
+		assertEquals(1000, db.count(null));
+		assertEquals(1000, db.countEstimate());
+		assertEquals(90, db.count(KeyRange.between(10L, 100L), null));
+		assertEquals(0, db.count(KeyRange.between(5000L, 6000L), null));
+		assertEquals("limits apply", 7, db.count(KeyRange.<Long>all().withLimit(7), null));
+
+		assertEquals(6, dups.count(KeyRange.between(4L, 10L), null));
+		assertEquals("duplicates each count", 4, dups.count(KeyRange.<Long>all().withFrom(8L, true).withTo(10L, true), null));
+		assertEquals(20, dups.count(null));
+	}
+
+	public void testPrimaryKeys() {
+		assertEquals(Arrays.asList(999L, 998L, 997L), keys(db, KeyRange.<Long>all().reversed().withLimit(3)));
+		assertEquals(Arrays.asList(8L, 8L, 6L, 6L, 4L, 4L), keys(dups, KeyRange.between(4L, 10L).reversed()));
+
+		final List<Long> keys = new ArrayList<Long>();
+		db.scanKeys(KeyRange.<Long>all(), new KeyVisitor<Long>() {
+			public boolean next(Long key) {
+				keys.add(key);
+				return keys.size() < 5;
+			}
+		}, null);
+		assertEquals("stops when the visitor does", Arrays.asList(0L, 1L, 2L, 3L, 4L), keys);
+	}
+
+	public void testCountsSeeTheTransaction() {
+		Transaction t = env.begin();
+		db.put(5000L, "v5000", t);
+		db.delete(0L, t);
+		db.delete(1L, t);
+		assertEquals(999, db.count(t));
+		assertEquals(1, db.count(KeyRange.from(1000L), t));
+		assertEquals(8, byLength.count(2L, t));
+		assertEquals(1, byLength.count(5L, t));
+		env.abort(t);
+		assertEquals(1000, db.count(null));
+	}
+
+	public void testSecondaryCounts() {
+		assertEquals(10, byLength.count(2L, null));
+		assertEquals(90, byLength.count(3L, null));
+		assertEquals(0, byLength.count(9L, null));
+		assertEquals(1000, byLength.count(null));
+		assertEquals(1000, byLength.countEstimate());
+		assertEquals(990, byLength.count(KeyRange.<Long>all().withFrom(3L, true), null));
+	}
+
+	public void testSecondaryKeyCounts() {
+		assertEquals("{2=10, 3=90, 4=900}", keyCounts(KeyRange.<Long>all()).toString());
+		assertEquals("{4=900, 3=90, 2=10}", keyCounts(KeyRange.<Long>all().reversed()).toString());
+		assertEquals("{3=90}", keyCounts(KeyRange.between(3L, 4L)).toString());
+		assertEquals("{}", keyCounts(KeyRange.from(5L)).toString());
+
+		final List<Long> keys = new ArrayList<Long>();
+		byLength.scanKeys(KeyRange.<Long>all().withFrom(3L, true), new KeyVisitor<Long>() {
+			public boolean next(Long key) {
+				keys.add(key);
+				return true;
+			}
+		}, null);
+		assertEquals("one visit per distinct key", Arrays.asList(3L, 4L), keys);
+
+		final Map<Long, Integer> first = new LinkedHashMap<Long, Integer>();
+		byLength.scanKeyCounts(KeyRange.<Long>all(), new SearchVisitor<Long, Integer>() {
+			public boolean next(Long key, Integer count) {
+				first.put(key, count);
+				return false;
+			}
+		}, null);
+		assertEquals("{2=10}", first.toString());
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.moss.bdbwrap.ordered.LongKeySerializer;
+import com.sleepycat.je.Transaction;
+
+public class KeyRangeTest extends TestCase {
+
+	private EnvironmentWrap env;
+	private LongKeyDbWrap<String> db;
+	private DbWrap<Long, String> dups;
+
+	@Override
+	protected void setUp() throws Exception {
+		env = new TestEnvironmentWrap(TempDir.create(), false);
+		db = new LongKeyDbWrap<String>("values", TestEnvironmentWrap.STRINGS, env);
+		dups = new DbWrap<Long, String>("dups", new LongKeySerializer(), TestEnvironmentWrap.STRINGS, env).permitDuplicateKeys();
+		env.load();
+		// even keys 0 to 18; each twice in the duplicates database
+		for (long i = 0; i < 20; i += 2) {
+			db.put(i, "value-" + i, null);
+			dups.put(i, "a" + i, null);
+			dups.put(i, "b" + i, null);
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		env.close();
+	}
+
+	private static List<Long> keys(DbWrap<Long, String> db, KeyRange<Long> range) {
+		final List<Long> keys = new ArrayList<Long>();
+		db.search(range, new SearchVisitor<Long, String>() {
+			public boolean next(Long key, String value) {
+				keys.add(key);
+				return true;
+			}
+		}, null);
+		return keys;
+	}
+
+	private static List<String> values(DbWrap<Long, String> db, KeyRange<Long> range) {
+		final List<String> values = new ArrayList<String>();
+		db.search(range, new SearchVisitor<Long, String>() {
+			public boolean next(Long key, String value) {
+				values.add(value);
+				return true;
+			}
+		}, null);
+		return values;
+	}
+
+	public void testBounds() {
+		assertEquals(Arrays.asList(4L, 6L, 8L), keys(db, KeyRange.between(4L, 10L)));
+		assertEquals(Arrays.asList(6L, 8L, 10L), keys(db, KeyRange.<Long>all().withFrom(4L, false).withTo(10L, true)));
+		assertEquals("bounds between keys", Arrays.asList(6L, 8L, 10L), keys(db, KeyRange.<Long>all().withFrom(5L, true).withTo(11L, false)));
+		assertEquals(Arrays.asList(14L, 16L, 18L), keys(db, KeyRange.from(14L)));
+		assertEquals(Collections.emptyList(), keys(db, KeyRange.between(30L, 40L)));
+		assertEquals(Collections.emptyList(), keys(db, KeyRange.between(6L, 6L)));
+	}
+
+	public void testReverse() {
+		assertEquals(Arrays.asList(10L, 8L, 6L), keys(db, KeyRange.<Long>all().withFrom(4L, false).withTo(10L, true).reversed()));
+		assertEquals(Arrays.asList(8L, 6L, 4L), keys(db, KeyRange.<Long>all().withFrom(4L, true).withTo(10L, false).reversed()));
+		assertEquals("upper bound past the last key", Arrays.asList(18L, 16L), keys(db, KeyRange.<Long>all().withTo(100L, true).reversed().withLimit(2)));
+		assertEquals(Collections.emptyList(), keys(db, KeyRange.<Long>all().withTo(-1L, true).reversed()));
+	}
+
+	public void testLimit() {
+		assertEquals(Arrays.asList(0L, 2L), keys(db, KeyRange.<Long>all().withLimit(2)));
+		assertEquals(Arrays.asList(18L, 16L), keys(db, KeyRange.<Long>all().reversed().withLimit(2)));
+		assertEquals(Collections.emptyList(), keys(db, KeyRange.<Long>all().withLimit(0)));
+	}
+
+	public void testDuplicates() {
+		assertEquals(Arrays.asList(8L, 8L, 10L, 10L), keys(dups, KeyRange.<Long>all().withFrom(8L, true).withTo(10L, true)));
+		assertEquals("an exclusive lower bound skips all its duplicates", Arrays.asList(10L, 10L), keys(dups, KeyRange.<Long>all().withFrom(8L, false).withTo(10L, true)));
+		assertEquals(Arrays.asList("b10", "a10", "b8", "a8"), values(dups, KeyRange.<Long>all().withFrom(8L, true).withTo(10L, true).reversed()));
+		assertEquals(Arrays.asList("b8", "a8", "b6"), values(dups, KeyRange.<Long>all().withTo(10L, false).reversed().withLimit(3)));
+	}
+
+	public void testScans() {
+		final List<String> values = new ArrayList<String>();
+		ValueScanner<String> scanner = new ValueScanner<String>() {
+			public void inspect(String next) {
+				values.add(next);
+			}
+		};
+		db.scan(KeyRange.<Long>all().withFrom(4L, false).withTo(10L, true).reversed(), scanner, null);
+		assertEquals(Arrays.asList("value-10", "value-8", "value-6"), values);
+
+		values.clear();
+		Transaction t = env.begin();
+		db.put(5L, "uncommitted", t);
+		db.scanUncommitted(KeyRange.between(4L, 10L).withLimit(3), scanner);
+		env.abort(t);
+		assertEquals(Arrays.asList("value-4", "uncommitted", "value-6"), values);
+	}
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.sleepycat.je.DatabaseEntry;
+
+public class LazyValueTest extends TestCase {
+
+	private EnvironmentWrap env;
+	private DbWrap<String, String> db;
+	private SingleKeySecondaryDbWrap<String, String> byColor;
+
+	@Override
+	protected void setUp() throws Exception {
+		env = new TestEnvironmentWrap(TempDir.create(), false);
+		db = new DbWrap<String, String>("values", TestEnvironmentWrap.STRINGS, TestEnvironmentWrap.STRINGS, env);
+		byColor = new SingleKeySecondaryDbWrap<String, String>("values-by-color", db, TestEnvironmentWrap.STRINGS) {
+			public String extractKey(String value) {
+				return value.substring(0, value.indexOf('-'));
+			}
+		};
+		env.load();
+		for (int i = 0; i < 50; i++) {
+			db.put(key(i), (i % 2 == 0 ? "red-" : "blue-") + i, null);
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		env.close();
+	}
+
+	private static String key(int i) {
+		return i < 10 ? "k0" + i : "k" + i;
+	}
+
+	public void testCopiesTheEntry() {
+		byte[] bytes = "red-1".getBytes();
+		DatabaseEntry data = new DatabaseEntry(bytes);
+		LazyValue<String> value = LazyValue.of(TestEnvironmentWrap.STRINGS, data);
+		assertNotSame(data, value.entry());
+
+		// what a cursor does with its entry on the next record
+		data.setData("blue-22".getBytes());
+		assertEquals(5, value.size());
+		assertEquals("red-1", value.get());
+	}
+
+	public void testDecodedOnlyWhenAsked() {
+		final List<LazyValue<String>> values = new ArrayList<LazyValue<String>>();
+		db.scanLazy(new ValueScanner<LazyValue<String>>() {
+			public void inspect(LazyValue<String> next) {
+				values.add(next);
+			}
+		}, null);
+		assertEquals(50, values.size());
+		for (LazyValue<String> next : values) {
+			assertFalse(next.isDecoded());
+		}
+
+		// handed out during the scan, still good after the cursor moved on and closed
+		for (int i = 0; i < 50; i++) {
+			LazyValue<String> next = values.get(i);
+			assertEquals((i % 2 == 0 ? "red-" : "blue-") + i, next.get());
+			assertTrue(next.isDecoded());
+			assertSame("decoded once", next.get(), next.get());
+		}
+	}
+
+	public void testInspectingTheBytes() {
+		final List<String> red = new ArrayList<String>();
+		final byte[] prefix = "red-".getBytes();
+		db.searchLazy(new SearchVisitor<String, LazyValue<String>>() {
+			public boolean next(String key, LazyValue<String> value) {
+				if (value.startsWith(prefix)) {
+					red.add(key);
+					assertEquals('r', value.byteAt(0));
+				}
+				else {
+					assertEquals('b', value.byteAt(0));
+				}
+				assertFalse(value.startsWith("red-and-then-some-more".getBytes()));
+				assertFalse(value.isDecoded());
+				try {
+					value.byteAt(value.size());
+					fail("Reading past the value should be refused");
+				}
+				catch (IndexOutOfBoundsException ex) {
+					// expected
+				}
+				return !key.equals(key(19));
+			}
+		}, null);
+		assertEquals("stopped after k19", 10, red.size());
+		assertEquals(key(0), red.get(0));
+		assertEquals(key(18), red.get(9));
+	}
+
+	public void testSecondary() throws Exception {
+		final List<LazyValue<String>> values = new ArrayList<LazyValue<String>>();
+		byColor.keySearchForwardLazy("blue", new SearchVisitor<String, LazyValue<String>>() {
+			public boolean next(String key, LazyValue<String> value) {
+				if (!key.equals("blue")) {
+					return false;
+				}
+				values.add(value);
+				return true;
+			}
+		}, null);
+		assertEquals(25, values.size());
+		for (LazyValue<String> next : values) {
+			assertTrue(next.get(), next.get().startsWith("blue-"));
+		}
+		assertEquals("blue-1", values.get(0).get());
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class LongKeyDbWrapTest extends TestCase {
+
+	private static final long[] KEYS = {Long.MIN_VALUE, -20, -1, 0, 1, 20, Long.MAX_VALUE - 1, Long.MAX_VALUE};
+
+	private EnvironmentWrap env;
+	private LongKeyDbWrap<String> db;
+	private LongKeySecondaryDbWrap<String> byNumber;
+
+	@Override
+	protected void setUp() throws Exception {
+		env = new TestEnvironmentWrap(TempDir.create(), false);
+		db = new LongKeyDbWrap<String>("values", TestEnvironmentWrap.STRINGS, env);
+		// files each record under the number in its value
+		byNumber = new LongKeySecondaryDbWrap<String>("values-by-number", db) {
+			public Long extractKey(String value) {
+				return Long.valueOf(value.substring(1));
+			}
+		};
+		env.load();
+		for (long next : KEYS) {
+			db.put(next, "v" + next, null);
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		env.close();
+	}
+
+	private static class Keys implements LongSearchVisitor<String> {
+		final List<Long> keys = new ArrayList<Long>();
+
+		public boolean next(long key, String value) {
+			assertEquals("v" + key, value);
+			keys.add(key);
+			return true;
+		}
+	}
+
+	public void testPrimitiveKeys() {
+		assertEquals("v-20", db.get(-20L, null, null));
+		assertEquals("v" + Long.MIN_VALUE, db.get(Long.MIN_VALUE, null, null));
+		assertNull(db.get(2L, null, null));
+		db.delete(-1L, null);
+		assertNull(db.get(-1L, null, null));
+		assertEquals("v-20", byNumber.get(-20L, null, null));
+	}
+
+	public void testScanEndIsExclusive() {
+		Keys visitor = new Keys();
+		db.scan(-20, 20, visitor, null);
+		assertEquals(Arrays.asList(-20L, -1L, 0L, 1L), visitor.keys);
+
+		visitor = new Keys();
+		db.scan(20, Long.MAX_VALUE, visitor, null);
+		assertEquals(Arrays.asList(20L, Long.MAX_VALUE - 1), visitor.keys);
+	}
+
+	public void testScanRange() {
+		Keys visitor = new Keys();
+		db.scan(KeyRange.<Long>all().withFrom(20L, true).withTo(Long.MAX_VALUE, true), visitor, null);
+		assertEquals(Arrays.asList(20L, Long.MAX_VALUE - 1, Long.MAX_VALUE), visitor.keys);
+
+		visitor = new Keys();
+		db.scan(KeyRange.<Long>all().withTo(-1L, true).reversed(), visitor, null);
+		assertEquals(Arrays.asList(-1L, -20L, Long.MIN_VALUE), visitor.keys);
+	}
+
+	public void testSecondaryScanRange() {
+		Keys visitor = new Keys();
+		byNumber.scan(1, Long.MAX_VALUE, visitor, null);
+		assertEquals(Arrays.asList(1L, 20L, Long.MAX_VALUE - 1), visitor.keys);
+
+		visitor = new Keys();
+		byNumber.scan(KeyRange.from(1L), visitor, null);
+		assertEquals(Arrays.asList(1L, 20L, Long.MAX_VALUE - 1, Long.MAX_VALUE), visitor.keys);
+
+		visitor = new Keys();
+		byNumber.scan(KeyRange.<Long>all().reversed().withLimit(2), visitor, null);
+		assertEquals(Arrays.asList(Long.MAX_VALUE, Long.MAX_VALUE - 1), visitor.keys);
+	}
+}
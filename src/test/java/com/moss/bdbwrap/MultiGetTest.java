@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.Transaction;
+
+public class MultiGetTest extends TestCase {
+
+	private EnvironmentWrap env;
+	private LongKeyDbWrap<String> db;
+	private LongKeySecondaryDbWrap<String> byLength;
+
+	@Override
+	protected void setUp() throws Exception {
+		env = new TestEnvironmentWrap(TempDir.create(), false);
+		db = new LongKeyDbWrap<String>("values", TestEnvironmentWrap.STRINGS, env);
+		byLength = new LongKeySecondaryDbWrap<String>("values-by-length", db) {
+			public Long extractKey(String value) {
+				return (long) value.length();
+			}
+		};
+		env.load();
+		// even keys 0 to 998
+		for (long i = 0; i < 1000; i += 2) {
+			db.put(i, "v" + i, null);
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		env.close();
+	}
+
+	public void testHitsMissesAndOrder() {
+		Map<Long, String> found = db.getAll(Arrays.asList(40L, 7L, 2L, -4L, 40L, 998L, 1000L, 3L, 4L), null, LockMode.DEFAULT);
+		assertEquals("in key order, without misses or repeats", Arrays.asList(2L, 4L, 40L, 998L), new ArrayList<Long>(found.keySet()));
+		assertEquals("v40", found.get(40L));
+		assertEquals("v998", found.get(998L));
+		assertNull(found.get(7L));
+
+		assertTrue(db.getAll(new ArrayList<Long>(), null, LockMode.DEFAULT).isEmpty());
+		assertTrue(db.getAll(Arrays.asList(1L, 5L, 2001L), null, LockMode.DEFAULT).isEmpty());
+	}
+
+	public void testInTransaction() {
+		Transaction t = env.begin();
+		db.put(5L, "v5", t);
+		Map<Long, String> found = db.getAll(Arrays.asList(4L, 5L, 6L), t, LockMode.DEFAULT);
+		assertEquals(Arrays.asList("v4", "v5", "v6"), new ArrayList<String>(found.values()));
+		env.abort(t);
+	}
+
+	public void testRecordsBetweenKeysNotLocked() {
+		Transaction reader = env.begin();
+		assertEquals(2, db.getAll(Arrays.asList(2L, 6L), reader, LockMode.DEFAULT).size());
+
+		// the reader never stepped onto 4, so a writer needn't wait for it
+		Transaction writer = env.begin();
+		db.put(4L, "changed", writer);
+		env.commit(writer);
+		env.commit(reader);
+		assertEquals("changed", db.get(4L, null, null));
+	}
+
+	public void testOnExecutor() {
+		List<Long> keys = new ArrayList<Long>();
+		for (long i = 999; i >= 0; i--) {
+			keys.add(i);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Map<Long, String> found = db.getAll(keys, null, LockMode.DEFAULT, executor);
+			assertEquals(500, found.size());
+			long expected = 0;
+			for (Map.Entry<Long, String> next : found.entrySet()) {
+				assertEquals(Long.valueOf(expected), next.getKey());
+				assertEquals("v" + expected, next.getValue());
+				expected += 2;
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testSecondary() {
+		Map<Long, String> found = byLength.getAll(Arrays.asList(4L, 9L, 2L, 3L), null, LockMode.DEFAULT);
+		assertEquals(Arrays.asList(2L, 3L, 4L), new ArrayList<Long>(found.keySet()));
+		assertEquals("the first value for the key", "v0", found.get(2L));
+		assertEquals("v10", found.get(3L));
+		assertEquals("v100", found.get(4L));
+	}
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.moss.bdbwrap.ordered.LongKeySerializer;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.Transaction;
+
+public class PageTest extends TestCase {
+
+	private EnvironmentWrap env;
+	private LongKeyDbWrap<String> db;
+	private LongKeySecondaryDbWrap<String> byLength;
+	private DbWrap<Long, String> dups;
+
+	@Override
+	protected void setUp() throws Exception {
+		env = new TestEnvironmentWrap(TempDir.create(), false);
+		db = new LongKeyDbWrap<String>("values", TestEnvironmentWrap.STRINGS, env);
+		byLength = new LongKeySecondaryDbWrap<String>("values-by-length", db) {
+			public Long extractKey(String value) {
+				return (long) value.length();
+			}
+		};
+		dups = new DbWrap<Long, String>("dups", new LongKeySerializer(), TestEnvironmentWrap.STRINGS, env).permitDuplicateKeys();
+		env.load();
+		for (long i = 0; i < 1000; i++) {
+			db.put(i, "v" + i, null);
+		}
+		// keys 0 to 29, with values d0 to d6 under each
+		for (long i = 0; i < 30; i++) {
+			for (int j = 0; j < 7; j++) {
+				dups.put(i, "d" + j, null);
+			}
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		env.close();
+	}
+
+	private static <K> List<String> pages(DbWrap<K, String> db, KeyRange<K> range, int size) {
+		List<String> entries = new ArrayList<String>();
+		String token = null;
+		do {
+			Page<KeyValue<K, String>> page = db.page(range, token, size, null);
+			assertTrue(page.items().size() <= size);
+			for (KeyValue<K, String> next : page.items()) {
+				entries.add(next.getKey() + ":" + next.getValue());
+			}
+			token = page.nextToken();
+		} while (token != null);
+		return entries;
+	}
+
+	private static <K> List<String> pages(SecondaryDbWrap<K, String> db, KeyRange<K> range, int size) {
+		List<String> entries = new ArrayList<String>();
+		String token = null;
+		do {
+			Page<KeyValue<K, String>> page = db.page(range, token, size, null);
+			assertTrue(page.items().size() <= size);
+			for (KeyValue<K, String> next : page.items()) {
+				entries.add(next.getKey() + ":" + next.getValue());
+			}
+			token = page.nextToken();
+		} while (token != null);
+		return entries;
+	}
+
+	public void testPrimary() {
+		List<String> entries = pages(db, KeyRange.<Long>all(), 7);
+		assertEquals(1000, entries.size());
+		assertEquals("0:v0", entries.get(0));
+		assertEquals("999:v999", entries.get(999));
+		assertEquals(entries, pages(db, KeyRange.<Long>all(), 1000));
+		assertEquals(entries, pages(db, KeyRange.<Long>all(), 1001));
+
+		Page<KeyValue<Long, String>> exact = db.page(KeyRange.between(0L, 10L), null, 10, null);
+		assertEquals(10, exact.items().size());
+		assertTrue("a full last page has no token", exact.isLast());
+	}
+
+	public void testRange() {
+		assertEquals(Arrays.asList("6:v6", "7:v7", "8:v8", "9:v9", "10:v10"), pages(db, KeyRange.<Long>all().withFrom(5L, false).withTo(10L, true), 2));
+		assertTrue(db.page(KeyRange.between(2000L, 3000L), null, 5, null).items().isEmpty());
+		try {
+			db.page(KeyRange.<Long>all().reversed(), null, 5, null);
+			fail("Pages only run forward");
+		}
+		catch (RuntimeException ex) {
+			// expected
+		}
+	}
+
+	public void testDuplicates() {
+		List<String> entries = pages(dups, KeyRange.<Long>all(), 5);
+		assertEquals(210, entries.size());
+		assertEquals(210, new HashSet<String>(entries).size());
+		assertEquals("0:d5", entries.get(5));
+		assertEquals("29:d6", entries.get(209));
+	}
+
+	public void testSecondary() {
+		List<String> entries = pages(byLength, KeyRange.<Long>all(), 13);
+		assertEquals(1000, entries.size());
+		assertEquals(1000, new HashSet<String>(entries).size());
+		assertEquals("2:v0", entries.get(0));
+		assertEquals("3:v10", entries.get(10));
+		assertEquals("4:v999", entries.get(999));
+	}
+
+	public void testLastKeyDeleted() {
+		Page<KeyValue<Long, String>> first = db.page(KeyRange.<Long>all(), null, 10, null);
+		assertEquals(Long.valueOf(9), first.items().get(9).getKey());
+		db.delete(9L, null);
+		db.delete(10L, null);
+		Page<KeyValue<Long, String>> second = db.page(KeyRange.<Long>all(), first.nextToken(), 3, null);
+		assertEquals(Long.valueOf(11), second.items().get(0).getKey());
+	}
+
+	public void testLastSecondaryEntryDeleted() {
+		Page<KeyValue<Long, String>> first = byLength.page(KeyRange.<Long>all(), null, 15, null);
+		assertEquals("v14", first.items().get(14).getValue());
+		db.delete(14L, null);
+		db.delete(13L, null);
+		Page<KeyValue<Long, String>> second = byLength.page(KeyRange.<Long>all(), first.nextToken(), 3, null);
+		assertEquals("v15", second.items().get(0).getValue());
+	}
+
+	public void testLastDuplicateDeleted() throws Exception {
+		Page<KeyValue<Long, String>> first = dups.page(KeyRange.<Long>all(), null, 3, null);
+		assertEquals("d2", first.items().get(2).getValue());
+
+		// just the duplicate the token names; its key keeps d3 and up
+		Transaction t = env.begin();
+		Cursor cursor = dups.db.openCursor(t, null);
+		try {
+			DatabaseEntry key = new DatabaseEntry(dups.keySerializer.serialize(0L));
+			DatabaseEntry data = new DatabaseEntry(dups.valueSerializer.serialize("d2"));
+			assertEquals(OperationStatus.SUCCESS, cursor.getSearchBoth(key, data, LockMode.DEFAULT));
+			assertEquals(OperationStatus.SUCCESS, cursor.delete());
+		}
+		finally {
+			cursor.close();
+		}
+		env.commit(t);
+		Page<KeyValue<Long, String>> second = dups.page(KeyRange.<Long>all(), first.nextToken(), 3, null);
+		assertEquals("0:d3", second.items().get(0).getKey() + ":" + second.items().get(0).getValue());
+
+		// the whole key
+		dups.delete(0L, null);
+		Page<KeyValue<Long, String>> third = dups.page(KeyRange.<Long>all(), second.nextToken(), 3, null);
+		assertEquals("1:d0", third.items().get(0).getKey() + ":" + third.items().get(0).getValue());
+	}
+
+	public void testBadToken() {
+		try {
+			db.page(KeyRange.<Long>all(), "AAA", 5, null);
+			fail("A token too short to hold a key should be refused");
+		}
+		catch (RuntimeException ex) {
+			// expected
+		}
+	}
+}
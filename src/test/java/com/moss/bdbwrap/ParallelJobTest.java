@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import com.sleepycat.je.Cursor;
+
+public class ParallelJobTest extends TestCase {
+
+	private EnvironmentWrap env;
+	private LongKeyDbWrap<String> db;
+	private ExecutorService executor;
+
+	@Override
+	protected void setUp() throws Exception {
+		env = new TestEnvironmentWrap(TempDir.create(), false);
+		db = new LongKeyDbWrap<String>("values", TestEnvironmentWrap.STRINGS, env);
+		env.load();
+		// uneven keys, so the parts don't all hold the same number of records
+		for (long i = 0; i < 1000; i++) {
+			db.put(i * i, "v" + i, null);
+		}
+		executor = Executors.newFixedThreadPool(8);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		executor.shutdown();
+		env.close();
+	}
+
+	public void testEveryRecordVisitedOnce() {
+		final Map<String, Integer> visits = new HashMap<String, Integer>();
+		ParallelJob<Long, String> job = new ParallelJob<Long, String>(db, new ValueWorker<String>() {
+			public Result<String> next(String value, Cursor cursor) {
+				synchronized (visits) {
+					Integer seen = visits.get(value);
+					visits.put(value, seen == null ? 1 : seen + 1);
+				}
+				return Result.update("u" + value.substring(1));
+			}
+		}).withParts(8).withChunkSize(30);
+		job.run(executor);
+
+		assertEquals(8, job.parts());
+		assertEquals(8, job.partsFinished());
+		assertEquals(1000, job.visited());
+		assertEquals(1000, job.updated());
+		assertEquals(1000, visits.size());
+		for (Map.Entry<String, Integer> next : visits.entrySet()) {
+			assertEquals(next.getKey(), Integer.valueOf(1), next.getValue());
+		}
+		assertEquals("u999", db.get(999L * 999L, null, null));
+	}
+
+	public void testFailedPartStopsTheOthers() {
+		ParallelJob<Long, String> job = new ParallelJob<Long, String>(db, new ValueWorker<String>() {
+			public Result<String> next(String value, Cursor cursor) {
+				if (value.equals("v3")) {
+					throw new IllegalStateException("Failing on " + value);
+				}
+				return Result.update(value);
+			}
+		}).withParts(8).withChunkSize(5).withPause(50);
+		try {
+			job.run(executor);
+			fail("The failing part should fail the job");
+		}
+		catch (RuntimeException ex) {
+			Throwable cause = ex;
+			while (!(cause instanceof IllegalStateException)) {
+				assertNotNull("the worker's failure is in the cause chain", cause.getCause());
+				cause = cause.getCause();
+			}
+		}
+		assertTrue("the other parts stopped early: " + job.visited(), job.visited() < 500);
+		assertTrue(job.partsFinished() < job.parts());
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import com.moss.bdbwrap.ordered.LongKeySerializer;
+
+public class PipelineTest extends TestCase {
+
+	/** Enough records for many batches in flight. */
+	private static final int RECORDS = Pipeline.BATCH_SIZE * 12 + 17;
+
+	private EnvironmentWrap env;
+	private DbWrap<Long, String> db;
+	private ExecutorService executor;
+
+	@Override
+	protected void setUp() throws Exception {
+		env = new TestEnvironmentWrap(TempDir.create(), false);
+		db = new DbWrap<Long, String>("values", new LongKeySerializer(), new Serializer<String>() {
+			public byte[] serialize(String value) {
+				return TestEnvironmentWrap.STRINGS.serialize(value);
+			}
+			public String deSerialize(byte[] data) {
+				String value = TestEnvironmentWrap.STRINGS.deSerialize(data);
+				if (value.equals("bad")) {
+					throw new IllegalStateException("Can't decode " + value);
+				}
+				return value;
+			}
+		}, env);
+		env.load();
+		for (long i = 0; i < RECORDS; i++) {
+			db.put(i, "value-" + i, null);
+		}
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		executor.shutdown();
+		env.close();
+	}
+
+	private List<Long> search(KeyRange<Long> range, boolean ordered, final int stopAfter) {
+		final List<Long> keys = new ArrayList<Long>();
+		db.searchPipelined(range, new SearchVisitor<Long, String>() {
+			public boolean next(Long key, String value) {
+				assertEquals("value-" + key, value);
+				keys.add(key);
+				return keys.size() != stopAfter;
+			}
+		}, null, executor, ordered);
+		return keys;
+	}
+
+	public void testOrdered() {
+		List<Long> keys = search(KeyRange.<Long>all(), true, -1);
+		assertEquals(RECORDS, keys.size());
+		for (int i = 0; i < RECORDS; i++) {
+			assertEquals(Long.valueOf(i), keys.get(i));
+		}
+
+		keys = search(KeyRange.<Long>all().reversed(), true, -1);
+		assertEquals(Long.valueOf(RECORDS - 1), keys.get(0));
+		assertEquals(Long.valueOf(0), keys.get(RECORDS - 1));
+	}
+
+	public void testUnordered() {
+		List<Long> keys = search(KeyRange.<Long>all(), false, -1);
+		Collections.sort(keys);
+		assertEquals(RECORDS, keys.size());
+		for (int i = 0; i < RECORDS; i++) {
+			assertEquals(Long.valueOf(i), keys.get(i));
+		}
+	}
+
+	public void testRange() {
+		List<Long> keys = search(KeyRange.between(100L, 1000L), true, -1);
+		assertEquals(900, keys.size());
+		assertEquals(Long.valueOf(100), keys.get(0));
+		assertEquals(Long.valueOf(999), keys.get(899));
+	}
+
+	public void testStop() {
+		List<Long> keys = search(KeyRange.<Long>all(), true, 300);
+		assertEquals(300, keys.size());
+		assertEquals(Long.valueOf(299), keys.get(299));
+
+		assertEquals(5, search(KeyRange.<Long>all(), false, 5).size());
+	}
+
+	public void testScanner() {
+		final List<String> values = new ArrayList<String>();
+		db.scanPipelined(new ValueScanner<String>() {
+			public void inspect(String next) {
+				values.add(next);
+			}
+		}, null, executor, true);
+		assertEquals(RECORDS, values.size());
+		assertEquals("value-0", values.get(0));
+	}
+
+	public void testDecodeFailure() {
+		db.put(500L, "bad", null);
+		try {
+			search(KeyRange.<Long>all(), true, -1);
+			fail("The decoder's failure should reach the caller");
+		}
+		catch (RuntimeException ex) {
+			Throwable cause = ex;
+			while (cause != null && !(cause instanceof IllegalStateException)) {
+				cause = cause.getCause();
+			}
+			assertNotNull(cause);
+		}
+
+		db.put(500L, "value-500", null);
+		assertEquals("the executor is still usable", RECORDS, search(KeyRange.<Long>all(), false, -1).size());
+	}
+}
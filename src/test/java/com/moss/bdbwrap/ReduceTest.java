@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.sleepycat.je.DatabaseEntry;
+
+public class ReduceTest extends TestCase {
+
+	/**
+	 * The values in the order the parts saw them.
+	 */
+	static class Collect implements Reducer<String, List<String>> {
+		public List<String> initial() {
+			return new ArrayList<String>();
+		}
+		public List<String> add(List<String> result, String value) {
+			result.add(value);
+			return result;
+		}
+		public List<String> combine(List<String> earlier, List<String> later) {
+			earlier.addAll(later);
+			return earlier;
+		}
+	}
+
+	private EnvironmentWrap env;
+	private LongKeyDbWrap<String> longs;
+	private DbWrap<String, String> strings;
+	private ExecutorService executor;
+
+	@Override
+	protected void setUp() throws Exception {
+		env = new TestEnvironmentWrap(TempDir.create(), false);
+		longs = new LongKeyDbWrap<String>("longs", TestEnvironmentWrap.STRINGS, env);
+		strings = new DbWrap<String, String>("strings", TestEnvironmentWrap.STRINGS, TestEnvironmentWrap.STRINGS, env);
+		env.load();
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+		env.close();
+	}
+
+	/**
+	 * The keys of each of the db's split ranges, checking that none is empty.
+	 */
+	private static List<List<String>> parts(final DbWrap<?, String> db, int parts) {
+		List<List<String>> keys = new ArrayList<List<String>>();
+		for (ByteRange range : db.split(parts)) {
+			final List<String> part = new ArrayList<String>();
+			db.scanRange(range, null, null, new RawVisitor() {
+				public boolean next(DatabaseEntry key, DatabaseEntry data) {
+					part.add(db.readValue(data));
+					return true;
+				}
+			});
+			keys.add(part);
+		}
+		return keys;
+	}
+
+	private static void assertCovers(List<String> expected, DbWrap<?, String> db, int parts) {
+		List<List<String>> split = parts(db, parts);
+		assertTrue(split.size() + " parts of " + parts, split.size() <= Math.max(1, parts));
+		List<String> all = new ArrayList<String>();
+		for (List<String> next : split) {
+			if (!expected.isEmpty()) {
+				assertFalse("an empty part of " + parts, next.isEmpty());
+			}
+			all.addAll(next);
+		}
+		assertEquals("every record once, in order, in " + parts + " parts", expected, all);
+	}
+
+	public void testSplitCoversEveryKey() {
+		List<String> expected = new ArrayList<String>();
+		for (int parts : new int[] {0, 1, 4}) {
+			assertCovers(expected, longs, parts);
+		}
+
+		longs.put(42L, "42", null);
+		expected.add("42");
+		for (int parts : new int[] {1, 2, 16}) {
+			assertCovers(expected, longs, parts);
+		}
+
+		// negative keys, and most of the records bunched at the end
+		for (long i = -500; i < 0; i += 7) {
+			longs.put(i, Long.toString(i), null);
+		}
+		for (long i = 1000000; i < 1003000; i++) {
+			longs.put(i, Long.toString(i), null);
+		}
+		expected.clear();
+		for (long i = -500; i < 0; i += 7) {
+			expected.add(Long.toString(i));
+		}
+		expected.add("42");
+		for (long i = 1000000; i < 1003000; i++) {
+			expected.add(Long.toString(i));
+		}
+		for (int parts : new int[] {2, 3, 8, 64}) {
+			assertCovers(expected, longs, parts);
+		}
+	}
+
+	public void testSplitStringKeys() {
+		// a long common prefix, and keys of different lengths
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 2000; i++) {
+			expected.add("some/shared/prefix/" + i);
+		}
+		expected.add("some/shared/prefix/");
+		Collections.sort(expected);
+		for (String next : expected) {
+			strings.put(next, next, null);
+		}
+		for (int parts : new int[] {2, 5, 32}) {
+			assertCovers(expected, strings, parts);
+		}
+		assertTrue(parts(strings, 5).size() > 1);
+	}
+
+	public void testReduceCombinesInKeyOrder() {
+		List<String> expected = new ArrayList<String>();
+		for (long i = 0; i < 5000; i++) {
+			longs.put(i * 13 - 20000, Long.toString(i), null);
+			expected.add(Long.toString(i));
+		}
+		for (int parts : new int[] {1, 3, 8, 100}) {
+			assertEquals(expected, longs.reduce(new Collect(), parts, executor));
+		}
+		List<List<String>> split = parts(longs, 8);
+		assertEquals("evenly spread keys give every part asked for", 8, split.size());
+		for (List<String> next : split) {
+			assertTrue("about an eighth each: " + next.size(), Math.abs(next.size() - 625) < 50);
+		}
+
+		final AtomicInteger seen = new AtomicInteger();
+		longs.scanParallel(new ValueScanner<String>() {
+			public void inspect(String next) {
+				seen.incrementAndGet();
+			}
+		}, 8, executor);
+		assertEquals(5000, seen.get());
+	}
+
+	public void testReduceOfNothing() {
+		assertEquals(new ArrayList<String>(), longs.reduce(new Collect(), 4, executor));
+	}
+
+	public void testFailureStopsTheOtherParts() throws Exception {
+		for (long i = 0; i < 4000; i++) {
+			longs.put(i, Long.toString(i), null);
+		}
+		final AtomicInteger added = new AtomicInteger();
+		ExecutorService two = Executors.newFixedThreadPool(2);
+		try {
+			longs.reduce(new Collect() {
+				@Override
+				public List<String> add(List<String> result, String value) {
+					if (value.equals("0")) {
+						throw new IllegalStateException("failed on purpose");
+					}
+					added.incrementAndGet();
+					try {
+						Thread.sleep(1);
+					}
+					catch (InterruptedException ex) {
+						throw new RuntimeException(ex);
+					}
+					return super.add(result, value);
+				}
+			}, 8, two);
+			fail("The failing part should fail the reduction");
+		}
+		catch (RuntimeException ex) {
+			assertTrue(ex.getCause() instanceof RuntimeException);
+		}
+		finally {
+			two.shutdown();
+		}
+		assertTrue("parts still running stop", two.awaitTermination(10, TimeUnit.SECONDS));
+		assertTrue("stopped early, after " + added.get(), added.get() < 500);
+	}
+}
@@ -39,12 +39,27 @@ package com.moss.bdbwrap;
 
 import java.io.File;
 
+import com.moss.bdbwrap.tostring.StringFromStringFactory;
+import com.moss.bdbwrap.tostring.ToStringSerializer;
+
 public class TestEnvironmentWrap extends EnvironmentWrap {
+	public static final ToStringSerializer<String> STRINGS = new ToStringSerializer<String>(new StringFromStringFactory());
+	
 	public TestEnvironmentWrap(File path) {
+		this(path, true);
+	}
+	
+	/**
+	 * Leaves {@link #load()} to the caller when load is false, so databases
+	 * can be registered first.
+	 */
+	public TestEnvironmentWrap(File path, boolean load) {
 		super(
 				path, 
 				(long) (10 * 1024 * 100) /* 10MB */
 			);
-		super.load();
+		if (load) {
+			super.load();
+		}
 	}
 }
@@ -0,0 +1,206 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.bdbsession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.moss.bdbwrap.EnvironmentWrap;
+import com.moss.bdbwrap.LongKeyDbWrap;
+import com.moss.bdbwrap.TempDir;
+import com.moss.bdbwrap.TestEnvironmentWrap;
+import com.sleepycat.je.Transaction;
+
+public class WorkAtomExecutorTest extends TestCase {
+
+	private EnvironmentWrap env;
+	private LongKeyDbWrap<String> db;
+	private WorkAtomExecutor executor;
+
+	@Override
+	protected void setUp() throws Exception {
+		env = new TestEnvironmentWrap(TempDir.create(), false);
+		db = new LongKeyDbWrap<String>("values", TestEnvironmentWrap.STRINGS, env);
+		env.load();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (executor != null) {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		env.close();
+	}
+
+	/**
+	 * Puts the key, noting how many atoms are in their transactions at once.
+	 */
+	private WorkAtom put(final long key, final AtomicInteger active, final AtomicInteger most) {
+		return new WorkAtom(env) {
+			@Override
+			protected void doWork(Transaction tx) throws Exception {
+				int now = active.incrementAndGet();
+				synchronized (most) {
+					if (now > most.get()) {
+						most.set(now);
+					}
+				}
+				try {
+					db.put(key, "v" + key, tx);
+					Thread.sleep(2);
+				}
+				finally {
+					active.decrementAndGet();
+				}
+			}
+		};
+	}
+
+	private void runAll(int atoms) throws Exception {
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger most = new AtomicInteger();
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (long i = 0; i < atoms; i++) {
+			futures.add(executor.submit(put(i, active, most)));
+		}
+		for (Future<Void> next : futures) {
+			next.get();
+		}
+		assertTrue("at most 3 at once, saw " + most.get(), most.get() <= 3);
+		for (long i = 0; i < atoms; i++) {
+			assertEquals("v" + i, db.get(i, null, null));
+		}
+	}
+
+	public void testBoundedByDefault() throws Exception {
+		executor = new WorkAtomExecutor(env, 3);
+		runAll(100);
+	}
+
+	public void testBoundedOnAWiderExecutor() throws Exception {
+		executor = new WorkAtomExecutor(env, 3, Executors.newFixedThreadPool(16));
+		runAll(100);
+	}
+
+	public void testFailurePropagates() throws Exception {
+		executor = new WorkAtomExecutor(env, 2);
+		Future<Void> failed = executor.submit(new WorkAtom(env) {
+			@Override
+			protected void doWork(Transaction tx) throws Exception {
+				db.put(1L, "never", tx);
+				throw new IllegalStateException("failed on purpose");
+			}
+		});
+		try {
+			failed.get();
+			fail("The atom's failure should reach the future");
+		}
+		catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			while (cause != null && !(cause instanceof IllegalStateException)) {
+				cause = cause.getCause();
+			}
+			assertNotNull("the atom's own exception is in the chain", cause);
+			assertEquals("failed on purpose", cause.getMessage());
+		}
+		assertNull("the transaction was aborted", db.get(1L, null, null));
+
+		// a failure doesn't use up a slot
+		for (int i = 0; i < 5; i++) {
+			executor.submit(put(i, new AtomicInteger(), new AtomicInteger())).get(10, TimeUnit.SECONDS);
+		}
+		assertEquals("v4", db.get(4L, null, null));
+	}
+
+	public void testOtherEnvironmentRefused() {
+		executor = new WorkAtomExecutor(env, 1);
+		EnvironmentWrap other = new TestEnvironmentWrap(TempDir.create());
+		try {
+			executor.submit(new WorkAtom(other) {
+				@Override
+				protected void doWork(Transaction tx) throws Exception {
+				}
+			});
+			fail("An atom for another environment should be refused");
+		}
+		catch (RuntimeException ex) {
+			// expected
+		}
+		finally {
+			other.close();
+		}
+	}
+
+	public void testShutdownFinishesSubmittedAtoms() throws Exception {
+		executor = new WorkAtomExecutor(env, 2);
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger most = new AtomicInteger();
+		for (long i = 0; i < 20; i++) {
+			executor.submit(put(i, active, most));
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		assertEquals("v19", db.get(19L, null, null));
+		try {
+			executor.submit(put(100, active, most));
+			fail("A shut down executor takes no more atoms");
+		}
+		catch (RejectedExecutionException ex) {
+			// expected
+		}
+	}
+
+	public void testRejectsNoTransactions() {
+		try {
+			new WorkAtomExecutor(env, 0);
+			fail("At least one transaction must be allowed");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.compression;
+
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.moss.bdbwrap.BinarySerializer;
+import com.moss.bdbwrap.DbWrap;
+import com.moss.bdbwrap.EnvironmentWrap;
+import com.moss.bdbwrap.TempDir;
+import com.moss.bdbwrap.TestEnvironmentWrap;
+import com.moss.bdbwrap.tostring.ToStringSerializer;
+
+public class CompressingSerializerTest extends TestCase {
+
+	private static final ToStringSerializer<String> STRINGS = TestEnvironmentWrap.STRINGS;
+
+	private static String record(int i) {
+		return "<record><name>name-number-" + i + "</name><color>" + (i % 3 == 0 ? "purple" : "yellowish") + "</color><count>" + i + "</count></record>";
+	}
+
+	public void testReadsUncompressedRecords() {
+		File dir = TempDir.create();
+		EnvironmentWrap env = new TestEnvironmentWrap(dir, false);
+		DbWrap<String, String> plain = new DbWrap<String, String>("records", STRINGS, STRINGS, env);
+		env.load();
+		plain.put("old", record(1), null);
+		plain.put("short", "x", null);
+		env.close();
+
+		env = new TestEnvironmentWrap(dir, false);
+		CompressingSerializer<String> serializer = new CompressingSerializer<String>(STRINGS, 16, 6);
+		DbWrap<String, String> compressed = new DbWrap<String, String>("records", STRINGS, serializer, env);
+		env.load();
+		assertEquals(record(1), compressed.get("old", null, null));
+		assertEquals("x", compressed.get("short", null, null));
+		compressed.put("new", record(2), null);
+		assertEquals(record(2), compressed.get("new", null, null));
+		env.close();
+		serializer.close();
+	}
+
+	public void testDictionary() {
+		EnvironmentWrap env = new TestEnvironmentWrap(TempDir.create(), false);
+		CompressingSerializer<String> serializer = new CompressingSerializer<String>(STRINGS, 16, 6);
+		DbWrap<String, String> db = new DbWrap<String, String>("records", STRINGS, serializer, env);
+		env.load();
+		for (int i = 0; i < 300; i++) {
+			db.put("key-" + i, record(i), null);
+		}
+		String sample = record(77);
+		int raw = STRINGS.serialize(sample).length;
+		int deflated = serializer.serialize(sample).length;
+
+		byte[] dictionary = serializer.train(db, 100, 4096);
+		serializer.withDictionary(dictionary);
+		int withDictionary = serializer.serialize(sample).length;
+		assertTrue(raw + " > " + deflated + " > " + withDictionary, withDictionary < deflated && deflated < raw);
+
+		db.put("sample", sample, null);
+		assertEquals(sample, db.get("sample", null, null));
+		assertEquals("written before the dictionary", record(5), db.get("key-5", null, null));
+
+		CompressingSerializer<String> without = new CompressingSerializer<String>(STRINGS);
+		try {
+			without.deSerialize(serializer.serialize(sample));
+			fail("Records written with a dictionary can't be read without it");
+		}
+		catch (RuntimeException ex) {
+			// expected
+		}
+		env.close();
+		serializer.close();
+	}
+
+	public void testUnmarkedBytesPassThrough() {
+		CompressingSerializer<byte[]> serializer = new CompressingSerializer<byte[]>(new BinarySerializer(), 4, 6);
+		byte[][] legacy = {
+				{},
+				{1},
+				{2, 3},
+				{1, 2, 3, 4, 5},
+				{2, 0, 0, 0, 0, 0, 0, 1},
+				{0, 9},
+				{(byte) 0xFC},
+				{(byte) 0xFC, 7, 1},
+				{(byte) 0xFC, 1, 0},
+		};
+		for (byte[] next : legacy) {
+			assertTrue(Arrays.toString(next), Arrays.equals(next, serializer.deSerialize(next)));
+		}
+	}
+
+	public void testRoundTrip() {
+		CompressingSerializer<byte[]> serializer = new CompressingSerializer<byte[]>(new BinarySerializer(), 4, 6);
+		byte[] big = new byte[1000];
+		assertTrue(serializer.serialize(big).length < 100);
+		assertTrue(Arrays.equals(big, serializer.deSerialize(serializer.serialize(big))));
+		byte[] small = {1, 2};
+		assertTrue("below the threshold", Arrays.equals(small, serializer.deSerialize(serializer.serialize(small))));
+
+		serializer.close();
+		assertTrue("still usable after close()", Arrays.equals(big, serializer.deSerialize(serializer.serialize(big))));
+	}
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.jaxb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import junit.framework.TestCase;
+
+import com.moss.bdbwrap.EnvironmentWrap;
+import com.moss.bdbwrap.TempDir;
+import com.moss.bdbwrap.TestEnvironmentWrap;
+import com.moss.bdbwrap.defaults.DefaultJaxbDbWrap;
+import com.sleepycat.je.DatabaseEntry;
+
+public class PooledJaxbSerializerTest extends TestCase {
+
+	@XmlRootElement
+	public static class Item {
+		public String name;
+		public int count;
+
+		public Item() {
+		}
+
+		public Item(String name, int count) {
+			this.name = name;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * Hands out a new context after {@link #renew()}.
+	 */
+	static class Provider implements JaxbContextProvider {
+		private JAXBContext context;
+
+		public synchronized JAXBContext context() {
+			try {
+				if (context == null) {
+					context = JAXBContext.newInstance(Item.class);
+				}
+				return context;
+			} catch (JAXBException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		synchronized void renew() {
+			context = null;
+		}
+	}
+
+	private EnvironmentWrap env;
+	private Provider provider;
+	private DefaultJaxbDbWrap<String, Item> items;
+
+	@Override
+	protected void setUp() throws Exception {
+		env = new TestEnvironmentWrap(TempDir.create(), false);
+		provider = new Provider();
+		items = new DefaultJaxbDbWrap<String, Item>("items", String.class, provider, env);
+		env.load();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		env.close();
+	}
+
+	public void testRoundTripThroughTheDatabase() {
+		for (int i = 0; i < 100; i++) {
+			items.put("item-" + i, new Item("item-" + i, i), null);
+		}
+		for (int i = 0; i < 100; i++) {
+			Item item = items.get("item-" + i, null, null);
+			assertEquals("item-" + i, item.name);
+			assertEquals(i, item.count);
+		}
+	}
+
+	public void testNewContext() {
+		items.put("a", new Item("a", 1), null);
+		assertEquals(1, items.get("a", null, null).count);
+		provider.renew();
+		items.put("b", new Item("b", 2), null);
+		assertEquals(1, items.get("a", null, null).count);
+		assertEquals(2, items.get("b", null, null).count);
+	}
+
+	public void testUsableAfterFailedRead() {
+		PooledJaxbSerializer<Item> serializer = new PooledJaxbSerializer<Item>(provider);
+		byte[] data = serializer.serialize(new Item("a", 1));
+		for (int i = 0; i < 3; i++) {
+			try {
+				serializer.deSerialize(new DatabaseEntry("<item><count>x".getBytes()));
+				fail("Malformed XML should not read");
+			}
+			catch (RuntimeException ex) {
+				// expected
+			}
+			assertEquals("a", serializer.deSerialize(data).name);
+		}
+	}
+
+	public void testThreads() throws InterruptedException {
+		final PooledJaxbSerializer<Item> serializer = new PooledJaxbSerializer<Item>(provider);
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			final String prefix = "thread-" + i + "-";
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < 500; j++) {
+							Item item = serializer.deSerialize(serializer.serialize(new Item(prefix + j, j)));
+							assertEquals(prefix + j, item.name);
+							assertEquals(j, item.count);
+						}
+					}
+					catch (Throwable ex) {
+						synchronized (failures) {
+							failures.add(ex);
+						}
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread next : threads) {
+			next.join();
+		}
+		assertEquals(new ArrayList<Throwable>(), failures);
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.jdkserial;
+
+import java.io.File;
+import java.io.Serializable;
+
+import junit.framework.TestCase;
+
+import com.moss.bdbwrap.DbWrap;
+import com.moss.bdbwrap.EnvironmentWrap;
+import com.moss.bdbwrap.TempDir;
+import com.moss.bdbwrap.TestEnvironmentWrap;
+import com.moss.bdbwrap.defaults.DefaultJdkSerialDbWrap;
+
+public class CompactJdkSerialSerializerTest extends TestCase {
+
+	@SuppressWarnings("serial")
+	public static class Point implements Serializable {
+		String label;
+		long x, y;
+
+		Point(String label, long x, long y) {
+			this.label = label;
+			this.x = x;
+			this.y = y;
+		}
+	}
+
+	public void testReadsLegacyRecordsAndWritesCompactOnes() {
+		File dir = TempDir.create();
+
+		EnvironmentWrap env = new TestEnvironmentWrap(dir, false);
+		DefaultJdkSerialDbWrap<String, Point> legacy = new DefaultJdkSerialDbWrap<String, Point>("points", String.class, env);
+		env.load();
+		legacy.put("old", new Point("old", 1, 2), null);
+		int legacySize = legacy.valueSerializer.serialize(new Point("new", 3, 4)).length;
+		env.close();
+
+		env = new TestEnvironmentWrap(dir, false);
+		DefaultJdkSerialDbWrap<String, Point> compact = new DefaultJdkSerialDbWrap<String, Point>("points", String.class, new ClassCatalogDbWrap("catalog", env), env);
+		env.load();
+		assertEquals("old", compact.get("old", null, null).label);
+		compact.put("new", new Point("new", 3, 4), null);
+		assertEquals(4, compact.get("new", null, null).y);
+		int compactSize = compact.valueSerializer.serialize(new Point("new", 3, 4)).length;
+		assertTrue(compactSize + " vs " + legacySize, compactSize < legacySize / 2);
+		env.close();
+
+		// the class descriptors outlive the environment
+		env = new TestEnvironmentWrap(dir, false);
+		compact = new DefaultJdkSerialDbWrap<String, Point>("points", String.class, new ClassCatalogDbWrap("catalog", env), env);
+		env.load();
+		assertEquals("old", compact.get("old", null, null).label);
+		assertEquals(3, compact.get("new", null, null).x);
+		env.close();
+	}
+
+	public void testCatalogFromAnotherEnvironmentRefused() {
+		EnvironmentWrap env = new TestEnvironmentWrap(TempDir.create(), false);
+		EnvironmentWrap other = new TestEnvironmentWrap(TempDir.create(), false);
+		ClassCatalogDbWrap catalog = new ClassCatalogDbWrap("catalog", other);
+		try {
+			new DefaultJdkSerialDbWrap<String, Point>("points", String.class, catalog, env);
+			fail("A catalog in another environment should be refused");
+		}
+		catch (RuntimeException ex) {
+			// expected
+		}
+		for (DbWrap<?, ?> next : env.databases()) {
+			assertFalse("the refused store was registered", next.name.equals("points"));
+		}
+	}
+}
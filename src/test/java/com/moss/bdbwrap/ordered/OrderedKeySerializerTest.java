@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.ordered;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import junit.framework.TestCase;
+
+public class OrderedKeySerializerTest extends TestCase {
+	
+	private static int compareBytes(byte[] a, byte[] b) {
+		for (int i = 0; i < a.length && i < b.length; i++) {
+			int x = a[i] & 0xFF;
+			int y = b[i] & 0xFF;
+			if (x != y) {
+				return x - y;
+			}
+		}
+		return a.length - b.length;
+	}
+	
+	private static <T> void assertOrderPreserved(final OrderedKeySerializer<T> serializer, List<T> values, Comparator<T> natural) {
+		List<T> byNatural = new ArrayList<T>(values);
+		Collections.sort(byNatural, natural);
+		
+		List<T> byBytes = new ArrayList<T>(values);
+		Collections.sort(byBytes, new Comparator<T>() {
+			public int compare(T a, T b) {
+				return compareBytes(serializer.serialize(a), serializer.serialize(b));
+			}
+		});
+		
+		assertEquals(byNatural, byBytes);
+		
+		for (T next : values) {
+			assertEquals(next, serializer.deSerialize(serializer.serialize(next)));
+		}
+	}
+	
+	private static <T extends Comparable<T>> Comparator<T> natural() {
+		return new Comparator<T>() {
+			public int compare(T a, T b) {
+				return a.compareTo(b);
+			}
+		};
+	}
+	
+	public void testLongs() {
+		Random random = new Random(42);
+		List<Long> values = new ArrayList<Long>(Arrays.asList(Long.MIN_VALUE, -10L, -9L, -1L, 0L, 1L, 9L, 10L, Long.MAX_VALUE));
+		for (int i = 0; i < 200; i++) {
+			values.add(random.nextLong());
+		}
+		assertOrderPreserved(new LongKeySerializer(), values, OrderedKeySerializerTest.<Long>natural());
+		assertEquals(8, new LongKeySerializer().serialize(12345L).length);
+	}
+	
+	public void testInts() {
+		Random random = new Random(7);
+		List<Integer> values = new ArrayList<Integer>(Arrays.asList(Integer.MIN_VALUE, -1, 0, 1, 9, 10, Integer.MAX_VALUE));
+		for (int i = 0; i < 200; i++) {
+			values.add(random.nextInt());
+		}
+		assertOrderPreserved(new IntKeySerializer(), values, OrderedKeySerializerTest.<Integer>natural());
+	}
+	
+	public void testUUIDsSortLikeTheirText() {
+		List<UUID> values = new ArrayList<UUID>();
+		for (int i = 0; i < 200; i++) {
+			values.add(UUID.randomUUID());
+		}
+		assertOrderPreserved(new UUIDKeySerializer(), values, new Comparator<UUID>() {
+			public int compare(UUID a, UUID b) {
+				return a.toString().compareTo(b.toString());
+			}
+		});
+	}
+	
+	public void testDates() {
+		List<Date> values = Arrays.asList(new Date(-1000L), new Date(0L), new Date(999L), new Date(), new Date(Long.MAX_VALUE));
+		assertOrderPreserved(new DateKeySerializer(), values, OrderedKeySerializerTest.<Date>natural());
+	}
+	
+	public void testStrings() {
+		List<String> values = Arrays.asList("", "a", "a\u0000", "a\u0000b", "a\u0001", "ab", "b", "\u00e9t\u00e9");
+		assertOrderPreserved(new StringKeySerializer(), values, OrderedKeySerializerTest.<String>natural());
+	}
+	
+	public void testTuples() {
+		TupleKeySerializer serializer = new TupleKeySerializer(new StringKeySerializer(), new LongKeySerializer());
+		
+		List<List<Object>> values = new ArrayList<List<Object>>();
+		values.add(Arrays.<Object>asList("a", 10L));
+		values.add(Arrays.<Object>asList("a", 9L));
+		values.add(Arrays.<Object>asList("a", -3L));
+		values.add(Arrays.<Object>asList("ab", 1L));
+		values.add(Arrays.<Object>asList("b", 0L));
+		
+		assertOrderPreserved(serializer, values, new Comparator<List<Object>>() {
+			public int compare(List<Object> a, List<Object> b) {
+				int first = ((String) a.get(0)).compareTo((String) b.get(0));
+				if (first != 0) {
+					return first;
+				}
+				return ((Long) a.get(1)).compareTo((Long) b.get(1));
+			}
+		});
+		
+		byte[] prefix = serializer.serialize(Arrays.<Object>asList("a"));
+		byte[] full = serializer.serialize(Arrays.<Object>asList("a", Long.MIN_VALUE));
+		assertTrue(compareBytes(prefix, full) < 0);
+		assertEquals(Arrays.<Object>asList("a"), serializer.deSerialize(prefix));
+	}
+}
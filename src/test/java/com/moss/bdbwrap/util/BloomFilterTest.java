@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.util;
+
+import junit.framework.TestCase;
+
+public class BloomFilterTest extends TestCase {
+	
+	private static byte[] key(String prefix, int i) {
+		return (prefix + i).getBytes();
+	}
+	
+	public void testNoFalseNegatives() {
+		BloomFilter filter = BloomFilter.create(10000, 0.01);
+		for (int i = 0; i < 10000; i++) {
+			byte[] key = key("in-", i);
+			filter.add(key, 0, key.length);
+		}
+		for (int i = 0; i < 10000; i++) {
+			byte[] key = key("in-", i);
+			assertTrue(filter.mightContain(key, 0, key.length));
+		}
+	}
+	
+	public void testFalsePositiveRate() {
+		BloomFilter filter = BloomFilter.create(10000, 0.01);
+		for (int i = 0; i < 10000; i++) {
+			byte[] key = key("in-", i);
+			filter.add(key, 0, key.length);
+		}
+		int falsePositives = 0;
+		for (int i = 0; i < 10000; i++) {
+			byte[] key = key("out-", i);
+			if (filter.mightContain(key, 0, key.length)) {
+				falsePositives++;
+			}
+		}
+		assertTrue("too many false positives: " + falsePositives, falsePositives < 300);
+	}
+	
+	public void testHonoursOffset() {
+		BloomFilter filter = BloomFilter.create(100, 0.01);
+		byte[] padded = "xxabcxx".getBytes();
+		filter.add(padded, 2, 3);
+		assertTrue(filter.mightContain("abc".getBytes(), 0, 3));
+	}
+}
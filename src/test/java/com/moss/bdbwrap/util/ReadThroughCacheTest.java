@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.util;
+
+import junit.framework.TestCase;
+
+import com.moss.bdbwrap.EnvironmentWrap;
+import com.moss.bdbwrap.LongKeyDbWrap;
+import com.moss.bdbwrap.TempDir;
+import com.moss.bdbwrap.TestEnvironmentWrap;
+import com.sleepycat.je.Transaction;
+
+public class ReadThroughCacheTest extends TestCase {
+
+	private EnvironmentWrap env;
+	private LongKeyDbWrap<String> db;
+
+	@Override
+	protected void setUp() throws Exception {
+		env = new TestEnvironmentWrap(TempDir.create(), false);
+		db = new LongKeyDbWrap<String>("values", TestEnvironmentWrap.STRINGS, env);
+		env.load();
+		for (long i = 0; i < 100; i++) {
+			db.put(i, "value-" + i, null);
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		env.close();
+	}
+
+	public void testHitsAndMisses() {
+		ReadThroughCache<Long, String> cache = ReadThroughCache.byEntries(db, 32);
+		assertEquals("value-1", cache.get(1L));
+		assertEquals(1, cache.misses());
+		assertEquals("value-1", cache.get(1L));
+		assertEquals(1, cache.hits());
+
+		assertNull(cache.get(500L));
+		assertNull(cache.get(500L));
+		assertEquals("missing keys are cached too", 2, cache.hits());
+		cache.close();
+	}
+
+	public void testWritesInvalidate() {
+		ReadThroughCache<Long, String> cache = ReadThroughCache.byEntries(db, 32);
+		assertNull(cache.get(500L));
+		db.put(500L, "new", null);
+		assertEquals("new", cache.get(500L));
+
+		assertEquals("value-1", cache.get(1L));
+		db.put(1L, "changed", null);
+		assertEquals("changed", cache.get(1L));
+		db.delete(1L, null);
+		assertNull(cache.get(1L));
+
+		Transaction t = env.begin();
+		db.put(2L, "in a transaction", t);
+		env.commit(t);
+		assertEquals("in a transaction", cache.get(2L));
+
+		assertEquals("value-3", cache.get(3L));
+		db.clear();
+		assertNull(cache.get(3L));
+		cache.close();
+	}
+
+	public void testTransactionalReadsBypassCache() {
+		ReadThroughCache<Long, String> cache = ReadThroughCache.byEntries(db, 32);
+		Transaction t = env.begin();
+		db.put(1L, "uncommitted", t);
+		assertEquals("uncommitted", cache.get(1L, t, null));
+		env.abort(t);
+		assertEquals("value-1", cache.get(1L));
+		cache.close();
+	}
+
+	public void testBounded() {
+		ReadThroughCache<Long, String> byEntries = ReadThroughCache.byEntries(db, 32);
+		ReadThroughCache<Long, String> byBytes = ReadThroughCache.byBytes(db, 2000);
+		for (long i = 0; i < 100; i++) {
+			byEntries.get(i);
+			byBytes.get(i);
+		}
+		assertTrue(byEntries.size() <= 32);
+		assertTrue(byBytes.size() > 0);
+		assertTrue(byBytes.size() < 2000 / ReadThroughCache.ENTRY_OVERHEAD);
+		byEntries.close();
+		byBytes.close();
+	}
+
+	public void testClosedCacheStopsListening() {
+		ReadThroughCache<Long, String> cache = ReadThroughCache.byEntries(db, 32);
+		cache.get(1L);
+		cache.close();
+		assertEquals(0, cache.size());
+		db.put(1L, "changed", null);
+		assertEquals("changed", cache.get(1L));
+	}
+}
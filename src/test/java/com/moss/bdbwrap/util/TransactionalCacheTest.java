@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.util;
+
+import junit.framework.TestCase;
+
+import com.moss.bdbwrap.EnvironmentWrap;
+import com.moss.bdbwrap.LongKeyDbWrap;
+import com.moss.bdbwrap.TempDir;
+import com.moss.bdbwrap.TestEnvironmentWrap;
+import com.moss.bdbwrap.TransactionListener;
+import com.sleepycat.je.Transaction;
+
+public class TransactionalCacheTest extends TestCase {
+
+	private EnvironmentWrap env;
+	private LongKeyDbWrap<String> db;
+	private TransactionalCache<Long, String> cache;
+
+	@Override
+	protected void setUp() throws Exception {
+		env = new TestEnvironmentWrap(TempDir.create(), false);
+		db = new LongKeyDbWrap<String>("values", TestEnvironmentWrap.STRINGS, env);
+		env.load();
+		cache = TransactionalCache.byEntries(db, 100);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		cache.close();
+		env.close();
+	}
+
+	public void testStagedWritesPublishedOnCommit() {
+		db.put(1L, "a", null);
+		assertEquals("a", cache.get(1L, null));
+
+		Transaction t = env.begin();
+		cache.put(1L, "b", t);
+		assertEquals("b", cache.get(1L, t));
+		env.commit(t);
+
+		long misses = cache.misses();
+		assertEquals("b", cache.get(1L, null));
+		assertEquals(misses, cache.misses());
+	}
+
+	public void testStagedWritesDroppedOnAbort() {
+		db.put(1L, "a", null);
+		assertEquals("a", cache.get(1L, null));
+
+		Transaction t = env.begin();
+		cache.put(1L, "b", t);
+		cache.delete(2L, t);
+		db.put(3L, "c", t);
+		assertEquals("c", cache.get(3L, t));
+		env.abort(t);
+
+		assertEquals("a", cache.get(1L, null));
+		assertNull(cache.get(3L, null));
+	}
+
+	public void testEarlierCommitNotPublishedOverLaterOne() {
+		final Transaction first = env.begin();
+		env.onCompletion(first, new TransactionListener() {
+			public void committed(Transaction t) {
+				// runs before the cache hears about the first commit
+				Transaction second = env.begin();
+				cache.put(1L, "second", second);
+				env.commit(second);
+			}
+			public void aborted(Transaction t) {
+			}
+		});
+		cache.put(1L, "first", first);
+		env.commit(first);
+
+		assertEquals("second", db.get(1L, null, null));
+		assertEquals("second", cache.get(1L, null));
+	}
+
+	public void testCommitNotPublishedOverAutoCommitWrite() {
+		final Transaction first = env.begin();
+		env.onCompletion(first, new TransactionListener() {
+			public void committed(Transaction t) {
+				db.put(1L, "auto", null);
+			}
+			public void aborted(Transaction t) {
+			}
+		});
+		cache.put(1L, "first", first);
+		env.commit(first);
+
+		assertEquals("auto", cache.get(1L, null));
+	}
+
+	public void testFailingListenerDoesNotFailTheCommit() {
+		db.put(1L, "a", null);
+		assertEquals("a", cache.get(1L, null));
+
+		Transaction t = env.begin();
+		env.onCompletion(t, new TransactionListener() {
+			public void committed(Transaction t) {
+				throw new RuntimeException("Listener failure");
+			}
+			public void aborted(Transaction t) {
+			}
+		});
+		cache.put(1L, "b", t);
+		env.commit(t);
+
+		long misses = cache.misses();
+		assertEquals("b", cache.get(1L, null));
+		assertEquals("the cache still heard about the commit", misses, cache.misses());
+	}
+
+	public void testRawCommitReleasedOnceCollected() throws InterruptedException {
+		Transaction t = env.begin();
+		cache.put(1L, "a", t);
+		t.commit();
+		t = null;
+
+		cache.get(1L, null);
+		long hits = cache.hits();
+		cache.get(1L, null);
+		assertEquals("keys of an unfinished transaction are not cached", hits, cache.hits());
+
+		for (int i = 0; i < 100 && cache.hits() == hits; i++) {
+			System.gc();
+			Thread.sleep(10);
+			cache.get(1L, null);
+			cache.get(1L, null);
+		}
+		assertTrue(cache.hits() > hits);
+	}
+
+	public void testAutoCommitWritesInvalidate() {
+		db.put(1L, "a", null);
+		assertEquals("a", cache.get(1L, null));
+		db.put(1L, "b", null);
+		assertEquals("b", cache.get(1L, null));
+		db.delete(1L, null);
+		assertNull(cache.get(1L, null));
+		db.put(1L, "c", null);
+		db.clear();
+		assertNull(cache.get(1L, null));
+	}
+}
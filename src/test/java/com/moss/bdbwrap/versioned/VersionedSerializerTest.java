@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2013, Moss Computing Inc.
+ *
+ * This file is part of bdbwrap.
+ *
+ * bdbwrap is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * bdbwrap is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with bdbwrap; see the file COPYING.  If not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ *
+ * Linking this library statically or dynamically with other modules is
+ * making a combined work based on this library.  Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * As a special exception, the copyright holders of this library give you
+ * permission to link this library with independent modules to produce an
+ * executable, regardless of the license terms of these independent
+ * modules, and to copy and distribute the resulting executable under
+ * terms of your choice, provided that you also meet, for each linked
+ * independent module, the terms and conditions of the license of that
+ * module.  An independent module is a module which is not derived from
+ * or based on this library.  If you modify this library, you may extend
+ * this exception to your version of the library, but you are not
+ * obligated to do so.  If you do not wish to do so, delete this
+ * exception statement from your version.
+ */
+package com.moss.bdbwrap.versioned;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import com.moss.bdbwrap.DbWrap;
+import com.moss.bdbwrap.EnvironmentWrap;
+import com.moss.bdbwrap.TempDir;
+import com.moss.bdbwrap.TestEnvironmentWrap;
+import com.moss.bdbwrap.tostring.ToStringSerializer;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+
+public class VersionedSerializerTest extends TestCase {
+
+	private static final ToStringSerializer<String> STRINGS = TestEnvironmentWrap.STRINGS;
+
+	private File dir;
+	private EnvironmentWrap env;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = TempDir.create();
+		// version 0: plain strings
+		env = new TestEnvironmentWrap(dir, false);
+		DbWrap<String, String> legacy = new DbWrap<String, String>("records", STRINGS, STRINGS, env);
+		env.load();
+		for (int i = 0; i < 100; i++) {
+			legacy.put("v0-" + i, "zero" + i, null);
+		}
+		env.close();
+
+		// version 1: the same, enveloped
+		env = new TestEnvironmentWrap(dir, false);
+		DbWrap<String, String> one = new DbWrap<String, String>("records", STRINGS, new VersionedSerializer<String>(1, STRINGS), env);
+		env.load();
+		for (int i = 0; i < 100; i++) {
+			one.put("v1-" + i, "one" + i, null);
+		}
+		env.close();
+		env = null;
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (env != null) {
+			env.close();
+		}
+	}
+
+	/**
+	 * Reopens the store with the given serializer.
+	 */
+	private DbWrap<String, String> open(VersionedSerializer<String> serializer) {
+		env = new TestEnvironmentWrap(dir, false);
+		DbWrap<String, String> db = new DbWrap<String, String>("records", STRINGS, serializer, env);
+		env.load();
+		return db;
+	}
+
+	private static VersionedSerializer<String> versionTwo() {
+		return new VersionedSerializer<String>(2, STRINGS)
+			.withUpgrade(0, new SerializedUpgrade<String, String>(STRINGS) {
+				protected String upgrade(String old) {
+					return "from0:" + old;
+				}
+			})
+			.withUpgrade(1, new SerializedUpgrade<String, String>(STRINGS) {
+				protected String upgrade(String old) {
+					return "from1:" + old;
+				}
+			});
+	}
+
+	private static int current(DbWrap<String, String> db, VersionedSerializer<String> serializer) throws Exception {
+		int current = 0;
+		Cursor cursor = db.db.openCursor(null, null);
+		try {
+			DatabaseEntry key = new DatabaseEntry();
+			DatabaseEntry data = new DatabaseEntry();
+			while (cursor.getNext(key, data, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				if (serializer.isCurrent(data)) {
+					current++;
+				}
+			}
+		}
+		finally {
+			cursor.close();
+		}
+		return current;
+	}
+
+	public void testUpgradesOnRead() {
+		DbWrap<String, String> db = open(versionTwo());
+		assertEquals("from0:zero3", db.get("v0-3", null, null));
+		assertEquals("from1:one3", db.get("v1-3", null, null));
+		db.put("v2", "two", null);
+		assertEquals("two", db.get("v2", null, null));
+	}
+
+	public void testRewriter() throws Exception {
+		VersionedSerializer<String> serializer = versionTwo();
+		DbWrap<String, String> db = open(serializer);
+		db.put("v0-3", "rewritten already", null);
+		assertEquals(1, current(db, serializer));
+
+		VersionRewriter<String, String> rewriter = new VersionRewriter<String, String>(db).withBatchSize(30).withPause(1);
+		rewriter.run();
+		assertTrue(rewriter.isFinished());
+		assertEquals(200, rewriter.visited());
+		assertEquals(199, rewriter.rewritten());
+		assertEquals(200, current(db, serializer));
+
+		assertEquals("from0:zero7", db.get("v0-7", null, null));
+		assertEquals("from1:one7", db.get("v1-7", null, null));
+		assertEquals("rewritten already", db.get("v0-3", null, null));
+	}
+
+	public void testUnknownVersion() {
+		DbWrap<String, String> db = open(new VersionedSerializer<String>(2, STRINGS));
+		try {
+			db.get("v1-3", null, null);
+			fail("A version without an upgrade should not be read");
+		}
+		catch (RuntimeException ex) {
+			// expected
+		}
+	}
+
+	public void testUpgradeMustBeOlder() {
+		try {
+			new VersionedSerializer<String>(2, STRINGS).withUpgrade(2, new SerializedUpgrade<String, String>(STRINGS) {
+				protected String upgrade(String old) {
+					return old;
+				}
+			});
+			fail("An upgrade from the current version makes no sense");
+		}
+		catch (RuntimeException ex) {
+			// expected
+		}
+	}
+}